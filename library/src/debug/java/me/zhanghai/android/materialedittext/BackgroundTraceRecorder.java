@@ -0,0 +1,232 @@
+/*
+ * Copyright (c) 2016 Zhang Hai <Dreaming.in.Code.ZH@Gmail.com>
+ * All Rights Reserved.
+ */
+
+package me.zhanghai.android.materialedittext;
+
+import android.graphics.Rect;
+import android.os.SystemClock;
+import android.support.annotation.NonNull;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Arrays;
+
+/**
+ * Records the timestamped sequence of state changes, error changes, hotspot updates, bounds
+ * changes, visibility changes and jumps to the current state delivered to a
+ * {@link MaterialEditTextBackgroundDrawable}, in a compact binary format that can be replayed
+ * offline by the unit tests of this library.
+ * <p>
+ * Only the events delivered from outside the drawable are recorded, because the drawable makes
+ * the same calls on itself again when the trace is replayed.
+ * </p>
+ * <p>
+ * Attaching the recorder to a drawable records a snapshot of the drawable first, so that a replay
+ * can start from the same state: its state mask, error, bounds, visibility, quality, lightweight
+ * mode and pixel snapping.
+ * </p>
+ * <p>
+ * A trace starts with a header of {@link #MAGIC} and {@link #VERSION}, followed by events. Each
+ * event is a type byte, the milliseconds since the previous event as a variable-length integer,
+ * and a payload depending on the type: a state mask byte, an error byte, two floats for a
+ * hotspot, four zigzag variable-length integers for bounds, a visibility byte, nothing for a
+ * jump to the current state, or for a snapshot a state mask byte, a flags byte, a quality byte
+ * and four zigzag variable-length integers for bounds.
+ * </p>
+ * <p>
+ * This class is only available in the debug build of this library.
+ * </p>
+ */
+public class BackgroundTraceRecorder {
+
+    static final int MAGIC = 0x4D455454;
+    static final int VERSION = 3;
+
+    static final byte EVENT_STATE = 0;
+    static final byte EVENT_ERROR = 1;
+    static final byte EVENT_HOTSPOT = 2;
+    static final byte EVENT_BOUNDS = 3;
+    static final byte EVENT_VISIBILITY = 4;
+    static final byte EVENT_JUMP = 5;
+    static final byte EVENT_SNAPSHOT = 6;
+
+    static final int SNAPSHOT_FLAG_ERROR = 1;
+    static final int SNAPSHOT_FLAG_VISIBLE = 1 << 1;
+    static final int SNAPSHOT_FLAG_LIGHTWEIGHT = 1 << 2;
+    static final int SNAPSHOT_FLAG_PIXEL_SNAPPING = 1 << 3;
+
+    private static final int INITIAL_CAPACITY = 256;
+
+    private byte[] mBuffer = new byte[INITIAL_CAPACITY];
+    private int mSize;
+
+    private long mLastEventTime = -1;
+
+    private final BackgroundTraceListener mListener = new Listener();
+    private MaterialEditTextBackgroundDrawable mDrawable;
+
+    public BackgroundTraceRecorder() {
+        writeInt(MAGIC);
+        writeByte(VERSION);
+    }
+
+    /**
+     * Start recording the events delivered to a drawable, after a snapshot of its current state. A
+     * recorder can only be attached to one drawable at a time.
+     *
+     * @param drawable The drawable to record.
+     * @throws IllegalStateException If this recorder is already attached.
+     */
+    public void attach(@NonNull MaterialEditTextBackgroundDrawable drawable) {
+        if (mDrawable != null) {
+            throw new IllegalStateException("Already attached to a drawable");
+        }
+        mDrawable = drawable;
+        writeSnapshot();
+        mDrawable.setTraceListener(mListener);
+    }
+
+    /**
+     * Stop recording the events delivered to the drawable attached to, keeping the trace recorded
+     * so far.
+     */
+    public void detach() {
+        if (mDrawable != null) {
+            mDrawable.setTraceListener(null);
+            mDrawable = null;
+        }
+    }
+
+    /**
+     * Get the size of the trace recorded so far.
+     *
+     * @return The size of the trace in bytes.
+     */
+    public int size() {
+        return mSize;
+    }
+
+    /**
+     * Get a copy of the trace recorded so far.
+     *
+     * @return The trace.
+     */
+    @NonNull
+    public byte[] toByteArray() {
+        return Arrays.copyOf(mBuffer, mSize);
+    }
+
+    /**
+     * Write the trace recorded so far to an output stream.
+     *
+     * @param outputStream The output stream to write to, which won't be closed.
+     * @throws IOException If an I/O error occurs.
+     */
+    public void writeTo(@NonNull OutputStream outputStream) throws IOException {
+        outputStream.write(mBuffer, 0, mSize);
+    }
+
+    private void writeSnapshot() {
+        writeEventHeader(EVENT_SNAPSHOT);
+        // Error is recorded as a flag, as for EVENT_STATE.
+        writeByte(mDrawable.getStateMask() & ~StateColorTable.STATE_ERROR);
+        int flags = 0;
+        if (mDrawable.hasError()) {
+            flags |= SNAPSHOT_FLAG_ERROR;
+        }
+        if (mDrawable.isVisible()) {
+            flags |= SNAPSHOT_FLAG_VISIBLE;
+        }
+        if (mDrawable.isLightweight()) {
+            flags |= SNAPSHOT_FLAG_LIGHTWEIGHT;
+        }
+        if (mDrawable.isPixelSnappingEnabled()) {
+            flags |= SNAPSHOT_FLAG_PIXEL_SNAPPING;
+        }
+        writeByte(flags);
+        writeByte(mDrawable.getQuality());
+        writeBounds(mDrawable.getBounds());
+    }
+
+    private class Listener implements BackgroundTraceListener {
+
+        @Override
+        public void onStateChange(int stateMask) {
+            writeEventHeader(EVENT_STATE);
+            writeByte(stateMask);
+        }
+
+        @Override
+        public void onErrorChange(boolean error, boolean animate) {
+            writeEventHeader(EVENT_ERROR);
+            writeByte((error ? 1 : 0) | (animate ? 1 << 1 : 0));
+        }
+
+        @Override
+        public void onHotspotChange(float x, float y) {
+            writeEventHeader(EVENT_HOTSPOT);
+            writeInt(Float.floatToIntBits(x));
+            writeInt(Float.floatToIntBits(y));
+        }
+
+        @Override
+        public void onBoundsChange(Rect bounds) {
+            writeEventHeader(EVENT_BOUNDS);
+            writeBounds(bounds);
+        }
+
+        @Override
+        public void onVisibilityChange(boolean visible) {
+            writeEventHeader(EVENT_VISIBILITY);
+            writeByte(visible ? 1 : 0);
+        }
+
+        @Override
+        public void onJumpToCurrentState() {
+            writeEventHeader(EVENT_JUMP);
+        }
+    }
+
+    private void writeEventHeader(byte type) {
+        long time = SystemClock.uptimeMillis();
+        long delay = mLastEventTime != -1 ? time - mLastEventTime : 0;
+        mLastEventTime = time;
+        writeByte(type);
+        writeVarint((int) Math.min(delay, Integer.MAX_VALUE));
+    }
+
+    private void writeBounds(Rect bounds) {
+        writeZigzagVarint(bounds.left);
+        writeZigzagVarint(bounds.top);
+        writeZigzagVarint(bounds.right);
+        writeZigzagVarint(bounds.bottom);
+    }
+
+    private void writeByte(int value) {
+        if (mSize == mBuffer.length) {
+            mBuffer = Arrays.copyOf(mBuffer, 2 * mBuffer.length);
+        }
+        mBuffer[mSize++] = (byte) value;
+    }
+
+    private void writeInt(int value) {
+        writeByte(value >>> 24);
+        writeByte(value >>> 16);
+        writeByte(value >>> 8);
+        writeByte(value);
+    }
+
+    private void writeVarint(int value) {
+        while ((value & ~0x7F) != 0) {
+            writeByte((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        writeByte(value);
+    }
+
+    private void writeZigzagVarint(int value) {
+        writeVarint((value << 1) ^ (value >> 31));
+    }
+}
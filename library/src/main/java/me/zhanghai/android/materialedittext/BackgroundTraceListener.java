@@ -0,0 +1,30 @@
+/*
+ * Copyright (c) 2016 Zhang Hai <Dreaming.in.Code.ZH@Gmail.com>
+ * All Rights Reserved.
+ */
+
+package me.zhanghai.android.materialedittext;
+
+import android.graphics.Rect;
+
+/**
+ * A listener for the events delivered to a {@link MaterialEditTextBackgroundDrawable} from
+ * outside, i.e. by its view or the app, excluding the calls it makes on itself.
+ * <p>
+ * This is the hook for the trace recorder in the debug build of this library.
+ * </p>
+ */
+interface BackgroundTraceListener {
+
+    void onStateChange(int stateMask);
+
+    void onErrorChange(boolean error, boolean animate);
+
+    void onHotspotChange(float x, float y);
+
+    void onBoundsChange(Rect bounds);
+
+    void onVisibilityChange(boolean visible);
+
+    void onJumpToCurrentState();
+}
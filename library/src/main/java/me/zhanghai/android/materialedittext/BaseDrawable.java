@@ -7,7 +7,6 @@ package me.zhanghai.android.materialedittext;
 
 import android.content.res.ColorStateList;
 import android.graphics.Canvas;
-import android.graphics.Color;
 import android.graphics.ColorFilter;
 import android.graphics.PixelFormat;
 import android.graphics.PorterDuff;
@@ -26,7 +25,13 @@ abstract class BaseDrawable extends Drawable implements TintableDrawable {
     protected PorterDuff.Mode mTintMode = PorterDuff.Mode.SRC_IN;
     protected PorterDuffColorFilter mTintFilter;
 
-    private DummyConstantState mConstantState = new DummyConstantState();
+    // A tint list with a single color, which is the common case, needs no table of colors and
+    // filters for each state.
+    private PorterDuffColorFilter mSingleTintFilter;
+    private StateColorTable mTintColorTable;
+    private PorterDuffColorFilter[] mTintFilters;
+
+    private DummyConstantState mConstantState;
 
     @Override
     public int getAlpha() {
@@ -75,6 +80,9 @@ abstract class BaseDrawable extends Drawable implements TintableDrawable {
     @Override
     public void setTintList(@Nullable ColorStateList tint) {
         mTintList = tint;
+        mSingleTintFilter = null;
+        mTintColorTable = null;
+        mTintFilters = null;
         if (updateTintFilter()) {
             invalidateSelf();
         }
@@ -86,6 +94,8 @@ abstract class BaseDrawable extends Drawable implements TintableDrawable {
     @Override
     public void setTintMode(@NonNull PorterDuff.Mode tintMode) {
         mTintMode = tintMode;
+        mSingleTintFilter = null;
+        mTintFilters = null;
         if (updateTintFilter()) {
             invalidateSelf();
         }
@@ -101,7 +111,16 @@ abstract class BaseDrawable extends Drawable implements TintableDrawable {
         return updateTintFilter();
     }
 
-    private boolean updateTintFilter() {
+    /**
+     * Get the mask of {@link StateColorTable} states for the current state of this drawable.
+     *
+     * @return The state mask.
+     */
+    protected int getStateMask() {
+        return StateColorTable.getStateMask(getState());
+    }
+
+    protected boolean updateTintFilter() {
 
         if (mTintList == null || mTintMode == null) {
             boolean hadTintFilter = mTintFilter != null;
@@ -109,10 +128,67 @@ abstract class BaseDrawable extends Drawable implements TintableDrawable {
             return hadTintFilter;
         }
 
-        int tintColor = mTintList.getColorForState(getState(), Color.TRANSPARENT);
-        // They made PorterDuffColorFilter.setColor() and setMode() @hide.
-        mTintFilter = new PorterDuffColorFilter(tintColor, mTintMode);
-        return true;
+        PorterDuffColorFilter tintFilter;
+        if (!mTintList.isStateful()) {
+            if (mSingleTintFilter == null) {
+                mSingleTintFilter = new PorterDuffColorFilter(mTintList.getDefaultColor(),
+                        mTintMode);
+            }
+            tintFilter = mSingleTintFilter;
+        } else {
+            tintFilter = getStatefulTintFilter();
+        }
+        boolean changed = mTintFilter != tintFilter;
+        mTintFilter = tintFilter;
+        return changed;
+    }
+
+    /**
+     * Get the color of the tint for the current state of this drawable.
+     *
+     * @return The tint color, or {@link android.graphics.Color#TRANSPARENT} if there is no tint.
+     */
+    @ColorInt
+    protected int getTintColor() {
+        if (mTintList == null) {
+            return 0;
+        } else if (!mTintList.isStateful()) {
+            return mTintList.getDefaultColor();
+        } else {
+            if (mTintColorTable == null) {
+                mTintColorTable = new StateColorTable(mTintList);
+            }
+            return mTintColorTable.getColor(getStateMask());
+        }
+    }
+
+    private PorterDuffColorFilter getStatefulTintFilter() {
+
+        if (mTintColorTable == null) {
+            mTintColorTable = new StateColorTable(mTintList);
+        }
+        if (mTintFilters == null) {
+            mTintFilters = new PorterDuffColorFilter[StateColorTable.STATE_MASK_COUNT];
+        }
+        int stateMask = getStateMask();
+        PorterDuffColorFilter tintFilter = mTintFilters[stateMask];
+        if (tintFilter == null) {
+            int tintColor = mTintColorTable.getColor(stateMask);
+            // Share the filter between states resolving to the same color, so that switching
+            // between them is not reported as a change.
+            for (int i = 0; i < mTintFilters.length; ++i) {
+                if (mTintFilters[i] != null && mTintColorTable.getColor(i) == tintColor) {
+                    tintFilter = mTintFilters[i];
+                    break;
+                }
+            }
+            if (tintFilter == null) {
+                // They made PorterDuffColorFilter.setColor() and setMode() @hide.
+                tintFilter = new PorterDuffColorFilter(tintColor, mTintMode);
+            }
+            mTintFilters[stateMask] = tintFilter;
+        }
+        return tintFilter;
     }
 
     /**
@@ -135,12 +211,28 @@ abstract class BaseDrawable extends Drawable implements TintableDrawable {
             return;
         }
 
+        if (!shouldTranslateToBounds()) {
+            onDraw(canvas, bounds.width(), bounds.height());
+            return;
+        }
+
         int saveCount = canvas.save();
         canvas.translate(bounds.left, bounds.top);
         onDraw(canvas, bounds.width(), bounds.height());
         canvas.restoreToCount(saveCount);
     }
 
+    /**
+     * Get whether the canvas should be translated to the top left corner of the bounds before
+     * {@link #onDraw(Canvas, int, int)}. Subclasses drawing in the coordinates of the canvas can
+     * return {@code false} to skip saving, translating and restoring the canvas on every draw.
+     *
+     * @return Whether the canvas should be translated, {@code true} by default.
+     */
+    protected boolean shouldTranslateToBounds() {
+        return true;
+    }
+
     protected ColorFilter getColorFilterForDrawing() {
         return mColorFilter != null ? mColorFilter : mTintFilter;
     }
@@ -155,6 +247,10 @@ abstract class BaseDrawable extends Drawable implements TintableDrawable {
 
     @Override
     public ConstantState getConstantState() {
+        // Only TextInputLayout needs it, so don't allocate it for every drawable.
+        if (mConstantState == null) {
+            mConstantState = new DummyConstantState();
+        }
         return mConstantState;
     }
 
@@ -0,0 +1,84 @@
+/*
+ * Copyright (c) 2016 Zhang Hai <Dreaming.in.Code.ZH@Gmail.com>
+ * All Rights Reserved.
+ */
+
+package me.zhanghai.android.materialedittext;
+
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+import android.graphics.Color;
+import android.graphics.ColorFilter;
+import android.graphics.Paint;
+import android.graphics.RectF;
+
+/**
+ * A strip of a color one pixel wide, rasterized with its color filter once and drawn stretched,
+ * which is cheaper than drawing an anti-aliased rect through a color filter on a software canvas.
+ * <p>
+ * The strip is rasterized again only when its height, color or color filter changes; alpha is
+ * applied when drawing. The strip is a single color, so it needs no bitmap filtering when
+ * stretched, but it should be drawn anti-aliased for fractional left and right edges.
+ * </p>
+ */
+class BitmapStrip {
+
+    private final Paint mRasterizePaint = new Paint();
+    private final Paint mDrawPaint = new Paint();
+    private final RectF mRect = new RectF();
+
+    private Bitmap mBitmap;
+    private int mColor;
+    private ColorFilter mColorFilter;
+
+    public BitmapStrip() {
+        mRasterizePaint.setStyle(Paint.Style.FILL);
+    }
+
+    public void draw(Canvas canvas, float left, float top, float right, float bottom, int color,
+                     ColorFilter colorFilter, int alpha, boolean antiAlias) {
+
+        int height = (int) Math.ceil(bottom - top);
+        if (height <= 0 || right <= left || alpha <= 0) {
+            return;
+        }
+        if (mBitmap == null || mBitmap.getHeight() != height || mColor != color
+                || mColorFilter != colorFilter) {
+            rasterize(height, color, colorFilter);
+        }
+
+        mDrawPaint.setAntiAlias(antiAlias);
+        mDrawPaint.setAlpha(alpha);
+        mRect.set(left, top, right, bottom);
+        canvas.drawBitmap(mBitmap, null, mRect, mDrawPaint);
+    }
+
+    private void rasterize(int height, int color, ColorFilter colorFilter) {
+
+        if (mBitmap == null || mBitmap.getHeight() != height) {
+            if (mBitmap != null) {
+                mBitmap.recycle();
+            }
+            mBitmap = Bitmap.createBitmap(1, height, Bitmap.Config.ARGB_8888);
+        } else {
+            mBitmap.eraseColor(Color.TRANSPARENT);
+        }
+        mColor = color;
+        mColorFilter = colorFilter;
+
+        mRasterizePaint.setColor(color);
+        mRasterizePaint.setColorFilter(colorFilter);
+        new Canvas(mBitmap).drawRect(0, 0, 1, height, mRasterizePaint);
+    }
+
+    /**
+     * Release the rasterized strip; it will be rasterized again on the next draw.
+     */
+    public void recycle() {
+        if (mBitmap != null) {
+            mBitmap.recycle();
+            mBitmap = null;
+        }
+        mColorFilter = null;
+    }
+}
@@ -0,0 +1,103 @@
+/*
+ * Copyright (c) 2016 Zhang Hai <Dreaming.in.Code.ZH@Gmail.com>
+ * All Rights Reserved.
+ */
+
+package me.zhanghai.android.materialedittext;
+
+import android.os.Handler;
+import android.os.Looper;
+import android.support.annotation.MainThread;
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Collects error updates for many {@link MaterialTextInputLayout}s, e.g. from validating a form on
+ * a server, and applies them together before the next frame, so that they share a single layout
+ * pass. Optionally, the error states of the {@code EditText} backgrounds can take effect
+ * immediately instead of starting a ripple animation for each field.
+ */
+@MainThread
+public class FormErrorController {
+
+    private final Handler mHandler = new Handler(Looper.getMainLooper());
+
+    private final Map<MaterialTextInputLayout, CharSequence> mPendingErrors =
+            new LinkedHashMap<>();
+
+    private boolean mAnimationEnabled = true;
+
+    private boolean mApplyPosted;
+    private final Runnable mApplyRunnable = new Runnable() {
+        @Override
+        public void run() {
+            mApplyPosted = false;
+            applyPendingErrors();
+        }
+    };
+
+    /**
+     * Get whether the error states of {@code EditText} backgrounds are animated. The default is
+     * {@code true}.
+     *
+     * @return Whether animation is enabled.
+     */
+    public boolean isAnimationEnabled() {
+        return mAnimationEnabled;
+    }
+
+    /**
+     * Set whether the error states of {@code EditText} backgrounds should be animated, or take
+     * effect immediately as in {@link android.graphics.drawable.Drawable#jumpToCurrentState()}.
+     * The default is {@code true}.
+     *
+     * @param animationEnabled Whether animation should be enabled.
+     */
+    public void setAnimationEnabled(boolean animationEnabled) {
+        mAnimationEnabled = animationEnabled;
+    }
+
+    /**
+     * Set an error message for a layout, to be applied together with other pending errors before
+     * the next frame. A later error for the same layout replaces an earlier pending one.
+     *
+     * @param layout The layout to set the error for.
+     * @param error The error message, or {@code null} to clear the error.
+     */
+    public void setError(@NonNull MaterialTextInputLayout layout, @Nullable CharSequence error) {
+        mPendingErrors.put(layout, error);
+        if (!mApplyPosted) {
+            mApplyPosted = true;
+            mHandler.post(mApplyRunnable);
+        }
+    }
+
+    /**
+     * Apply all pending errors now.
+     */
+    public void applyPendingErrors() {
+        cancelApply();
+        for (Map.Entry<MaterialTextInputLayout, CharSequence> entry : mPendingErrors.entrySet()) {
+            entry.getKey().setError(entry.getValue(), mAnimationEnabled);
+        }
+        mPendingErrors.clear();
+    }
+
+    /**
+     * Discard all pending errors.
+     */
+    public void cancelPendingErrors() {
+        cancelApply();
+        mPendingErrors.clear();
+    }
+
+    private void cancelApply() {
+        if (mApplyPosted) {
+            mHandler.removeCallbacks(mApplyRunnable);
+            mApplyPosted = false;
+        }
+    }
+}
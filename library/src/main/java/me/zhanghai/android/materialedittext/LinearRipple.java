@@ -12,7 +12,8 @@ import android.animation.TimeInterpolator;
 import android.graphics.Canvas;
 import android.graphics.Paint;
 import android.graphics.Rect;
-import android.graphics.drawable.Drawable;
+import android.graphics.RectF;
+import android.view.animation.AnimationUtils;
 import android.view.animation.LinearInterpolator;
 
 import me.zhanghai.android.materialedittext.internal.FloatProperty;
@@ -30,17 +31,17 @@ class LinearRipple {
     private static final float WAVE_TOUCH_UP_ACCELERATION_DP = 3400;
     private static final float WAVE_OPACITY_DECAY_VELOCITY = 3;
 
-    private static final int RIPPLE_ENTER_DELAY = 80;
-    private static final int OPACITY_ENTER_DURATION = 120;
+    static final int RIPPLE_ENTER_DELAY = 80;
+    static final int OPACITY_ENTER_DURATION = 120;
 
-    private static final TimeInterpolator LINEAR_INTERPOLATOR = new LinearInterpolator();
-    private static final TimeInterpolator DECELERATE_INTERPOLATOR = new LogDecelerateInterpolator(
-            400f, 1.4f, 0);
+    static final TimeInterpolator LINEAR_INTERPOLATOR = new LinearInterpolator();
+    static final TimeInterpolator DECELERATE_INTERPOLATOR = new LogDecelerateInterpolator(400f,
+            1.4f, 0);
 
-    private final float mWaveTouchDownAcceleration;
-    private final float mWaveTouchUpAcceleration;
+    private float mWaveTouchDownAcceleration;
+    private float mWaveTouchUpAcceleration;
 
-    private Drawable mOwner;
+    private MaterialEditTextBackgroundDrawable mOwner;
     private Rect mBounds;
     private float mStartingPosition;
 
@@ -50,18 +51,35 @@ class LinearRipple {
     private float mTweenRipple;
     private float mOpacity = 1;
 
+    // Exiting ripples merged into this ripple, as the differences between their opacity and ours.
+    // Exiting ripples fade at the same rate, so the differences hold until they have exited.
+    private float[] mMergedOpacityOffsets;
+    private int mMergedCount;
+    private long mExitTime;
+    private long mOpacityTime;
+
     private Animator mAnimator;
 
-    public LinearRipple(Drawable owner, Rect bounds, float position, float density) {
+    private final RectF mTempRect = new RectF();
+
+    public LinearRipple(MaterialEditTextBackgroundDrawable owner, Rect bounds, float position,
+                        float density) {
 
-        mWaveTouchDownAcceleration = WAVE_TOUCH_DOWN_ACCELERATION_DP * density;
-        mWaveTouchUpAcceleration = WAVE_TOUCH_UP_ACCELERATION_DP * density;
+        setDensity(density);
 
         mOwner = owner;
         onBoundsChange(bounds);
         mStartingPosition = position;
     }
 
+    /*
+     * Only affects animations started afterwards.
+     */
+    public void setDensity(float density) {
+        mWaveTouchDownAcceleration = getWaveTouchDownAcceleration(density);
+        mWaveTouchUpAcceleration = getWaveTouchUpAcceleration(density);
+    }
+
     public void onBoundsChange(Rect bounds) {
         mBounds = bounds;
         mTargetRadius = mBounds.width() / 2f;
@@ -74,7 +92,11 @@ class LinearRipple {
     }
 
     private int getRippleEnterDuration() {
-        return (int) (1000 * Math.sqrt(mTargetRadius / mWaveTouchDownAcceleration) + 0.5);
+        return getRippleEnterDuration(mTargetRadius, mWaveTouchDownAcceleration);
+    }
+
+    static int getRippleEnterDuration(float targetRadius, float waveTouchDownAcceleration) {
+        return (int) (1000 * Math.sqrt(targetRadius / waveTouchDownAcceleration) + 0.5);
     }
 
     private Animator createEnterAnimation() {
@@ -122,10 +144,24 @@ class LinearRipple {
     }
 
     private int getRippleFillOrExitDuration() {
-        float radius = getCurrentRadius();
-        float remaining = mTargetRadius - radius;
+        return getRippleFillOrExitDuration(mTargetRadius, getCurrentRadius(),
+                mWaveTouchDownAcceleration, mWaveTouchUpAcceleration);
+    }
+
+    static int getRippleFillOrExitDuration(float targetRadius, float radius,
+                                           float waveTouchDownAcceleration,
+                                           float waveTouchUpAcceleration) {
+        float remaining = targetRadius - radius;
         return (int) (1000 * Math.sqrt(2 * remaining /
-                (mWaveTouchUpAcceleration + mWaveTouchDownAcceleration)) + 0.5);
+                (waveTouchUpAcceleration + waveTouchDownAcceleration)) + 0.5);
+    }
+
+    static float getWaveTouchDownAcceleration(float density) {
+        return WAVE_TOUCH_DOWN_ACCELERATION_DP * density;
+    }
+
+    static float getWaveTouchUpAcceleration(float density) {
+        return WAVE_TOUCH_UP_ACCELERATION_DP * density;
     }
 
     private Animator createFillAnimation() {
@@ -152,6 +188,7 @@ class LinearRipple {
             return;
         }
 
+        mExitTime = AnimationUtils.currentAnimationTimeMillis();
         mAnimator = createExitAnimation();
         mAnimator.start();
     }
@@ -160,16 +197,120 @@ class LinearRipple {
         return mOpacity == 0;
     }
 
+    /**
+     * Get whether another exiting ripple can be merged into this exiting ripple, so that this
+     * ripple alone looks exactly the same as both ripples drawn over each other until they have
+     * exited. Ripples spanning the full bounds are drawn in the same rect, and this ripple must be
+     * the more opaque one so that it exits last. Both exit animations must have had a frame, so
+     * that their opacities are from the same frame time; an animation only starts fading on its
+     * first frame. Their composited opacity must also be drawable with the paint alpha, which it
+     * only decreases from.
+     *
+     * @param other The other exiting ripple.
+     * @param alphaFraction The fraction of alpha that a ripple of full opacity is drawn with.
+     * @return Whether the other ripple can be merged into this ripple.
+     */
+    public boolean canMergeWith(LinearRipple other, float alphaFraction) {
+        return mTweenRipple == 1 && other.mTweenRipple == 1 && mOpacity >= other.mOpacity
+                && hasExitAnimationTicked() && other.hasExitAnimationTicked()
+                && getCompositeOpacity(getTransparency(alphaFraction)
+                * other.getTransparency(alphaFraction), alphaFraction) >= 0;
+    }
+
+    /**
+     * Merge another exiting ripple into this ripple. The animation of this ripple is left
+     * unchanged, and the other ripple is cancelled and should be dropped.
+     *
+     * @param other The other exiting ripple, for which {@link #canMergeWith(LinearRipple, float)}
+     *              is {@code true}.
+     */
+    public void mergeWith(LinearRipple other) {
+
+        int mergedCount = mMergedCount + 1 + other.mMergedCount;
+        if (mMergedOpacityOffsets == null || mMergedOpacityOffsets.length < mergedCount) {
+            float[] mergedOpacityOffsets = new float[mergedCount];
+            if (mMergedOpacityOffsets != null) {
+                System.arraycopy(mMergedOpacityOffsets, 0, mergedOpacityOffsets, 0,
+                        mMergedCount);
+            }
+            mMergedOpacityOffsets = mergedOpacityOffsets;
+        }
+        float offset = mOpacity - other.mOpacity;
+        mMergedOpacityOffsets[mMergedCount++] = offset;
+        for (int i = 0; i < other.mMergedCount; ++i) {
+            mMergedOpacityOffsets[mMergedCount++] = offset + other.mMergedOpacityOffsets[i];
+        }
+
+        other.cancelAnimation();
+    }
+
+    private boolean hasExitAnimationTicked() {
+        return mOpacityTime > mExitTime;
+    }
+
+    /*
+     * Get the transparency left by this ripple and the ripples merged into it drawn over each
+     * other, which is the product of 1 - alphaFraction * opacity of each.
+     */
+    private float getTransparency(float alphaFraction) {
+        float transparency = 1 - alphaFraction * mOpacity;
+        for (int i = 0; i < mMergedCount; ++i) {
+            transparency *= 1 - alphaFraction * getMergedOpacity(i);
+        }
+        return transparency;
+    }
+
+    private float getMergedOpacity(int index) {
+        return Math.max(0, mOpacity - mMergedOpacityOffsets[index]);
+    }
+
+    /*
+     * Get the opacity that draws with the given transparency left in one pass, or -1 if the paint
+     * alpha cannot reach it.
+     */
+    private static float getCompositeOpacity(float transparency, float alphaFraction) {
+        if (alphaFraction < 0) {
+            return -1;
+        } else if (alphaFraction == 0) {
+            // Nothing is visible however many times we draw.
+            return 0;
+        }
+        float opacity = (1 - transparency) / alphaFraction;
+        // Allow for float error below what the paint alpha can resolve.
+        if (opacity > 1 + 0.5f / 0xFF) {
+            return -1;
+        }
+        return Math.min(opacity, 1);
+    }
+
+    /**
+     * Get the number of passes this ripple should be drawn in. A ripple with ripples merged into it
+     * is drawn in one pass with their composited opacity, unless a change to the paint alpha has
+     * made that opacity unreachable, in which case each of them is drawn in its own pass.
+     *
+     * @param alphaFraction The fraction of alpha that a ripple of full opacity is drawn with, or
+     *                      {@code -1} if unknown.
+     * @return The number of passes.
+     */
+    public int getPassCount(float alphaFraction) {
+        if (mMergedCount == 0 || getCompositeOpacity(getTransparency(alphaFraction),
+                alphaFraction) >= 0) {
+            return 1;
+        }
+        return 1 + mMergedCount;
+    }
+
     private int getOpacityExitDuration() {
-        return (int) (1000 * mOpacity / WAVE_OPACITY_DECAY_VELOCITY + 0.5f);
+        return getOpacityExitDuration(mOpacity);
+    }
+
+    static int getOpacityExitDuration(float opacity) {
+        return (int) (1000 * opacity / WAVE_OPACITY_DECAY_VELOCITY + 0.5f);
     }
 
     private Animator createExitAnimation() {
 
-        ObjectAnimator opacity = ObjectAnimator.ofFloat(this, OPACITY, 0);
-        //opacity.setAutoCancel(true);
-        opacity.setDuration(getOpacityExitDuration());
-        opacity.setInterpolator(LINEAR_INTERPOLATOR);
+        Animator opacity = createOpacityExitAnimation(getOpacityExitDuration());
 
         if (hasFilled()) {
             return opacity;
@@ -186,6 +327,18 @@ class LinearRipple {
         }
     }
 
+    private Animator createOpacityExitAnimation(int duration) {
+        ObjectAnimator opacity = ObjectAnimator.ofFloat(this, OPACITY, 0);
+        //opacity.setAutoCancel(true);
+        opacity.setDuration(duration);
+        opacity.setInterpolator(LINEAR_INTERPOLATOR);
+        return opacity;
+    }
+
+    public boolean isAnimating() {
+        return mAnimator != null && mAnimator.isStarted();
+    }
+
     public void cancelAnimation() {
         stopAnimation(true);
     }
@@ -207,27 +360,65 @@ class LinearRipple {
         mAnimator = null;
     }
 
-    public void draw(Canvas canvas, Paint paint) {
+    public void draw(Canvas canvas, Paint paint, float alphaFraction) {
 
         int origAlpha = paint.getAlpha();
-        int alpha = (int) (origAlpha * mOpacity + 0.5f);
+        int passCount = getPassCount(alphaFraction);
+        for (int i = 0; i < passCount; ++i) {
+            int alpha = getDrawingRect(origAlpha, alphaFraction, passCount, i, mTempRect);
+            if (alpha <= 0) {
+                continue;
+            }
+            paint.setAlpha(alpha);
+            canvas.drawRect(mTempRect, paint);
+        }
+        paint.setAlpha(origAlpha);
+    }
+
+    /**
+     * Compute the rect and alpha this ripple should be drawn with in a pass.
+     *
+     * @param paintAlpha The alpha of the paint to draw with.
+     * @param alphaFraction The fraction of alpha that a ripple of full opacity is drawn with, or
+     *                      {@code -1} if unknown.
+     * @param passCount The number of passes from {@link #getPassCount(float)}.
+     * @param pass The pass to draw.
+     * @param outRect The rect to receive the drawing rect.
+     * @return The alpha to draw with, or {@code 0} if there is nothing to draw, in which case
+     *         {@code outRect} is left unchanged.
+     */
+    public int getDrawingRect(int paintAlpha, float alphaFraction, int passCount, int pass,
+                              RectF outRect) {
+
+        float opacity;
+        if (pass > 0) {
+            opacity = getMergedOpacity(pass - 1);
+        } else if (passCount == 1 && mMergedCount > 0) {
+            opacity = getCompositeOpacity(getTransparency(alphaFraction), alphaFraction);
+        } else {
+            opacity = mOpacity;
+        }
+        int alpha = (int) (paintAlpha * opacity + 0.5f);
         float radius = getCurrentRadius();
         if (alpha <= 0 || radius <= 0) {
-            return;
+            return 0;
         }
 
         float position = MathUtils.lerp(mStartingPosition, mTargetPosition, mTweenRipple);
         float left = MathUtils.constrain(position - radius, mBounds.left, mBounds.right);
         float right = MathUtils.constrain(position + radius, mBounds.left, mBounds.right);
-        paint.setAlpha(alpha);
-        canvas.drawRect(left, mBounds.top, right, mBounds.bottom, paint);
-        paint.setAlpha(origAlpha);
+        outRect.set(left, mBounds.top, right, mBounds.bottom);
+        return alpha;
     }
 
     private void invalidateSelf() {
         mOwner.invalidateSelf();
     }
 
+    private void invalidateSelfForAnimation() {
+        mOwner.invalidateSelfForAnimation(hasFilled() || hasExited());
+    }
+
     /**
      * From {@code android.graphics.drawable.RippleForeground.LogDecelerateInterpolator}.
      *
@@ -271,7 +462,7 @@ class LinearRipple {
                 @Override
                 public void setValue(LinearRipple object, float value) {
                     object.mTweenRipple = value;
-                    object.invalidateSelf();
+                    object.invalidateSelfForAnimation();
                 }
             };
 
@@ -289,7 +480,8 @@ class LinearRipple {
                 @Override
                 public void setValue(LinearRipple object, float value) {
                     object.mOpacity = value;
-                    object.invalidateSelf();
+                    object.mOpacityTime = AnimationUtils.currentAnimationTimeMillis();
+                    object.invalidateSelfForAnimation();
                 }
             };
 }
@@ -7,11 +7,22 @@ package me.zhanghai.android.materialedittext;
 
 import android.annotation.SuppressLint;
 import android.content.Context;
+import android.content.res.Configuration;
+import android.graphics.Rect;
 import android.graphics.drawable.Drawable;
 import android.os.Build;
+import android.support.annotation.IntDef;
+import android.support.annotation.NonNull;
+import android.support.annotation.WorkerThread;
 import android.support.design.widget.TextInputEditText;
 import android.util.AttributeSet;
 import android.view.MotionEvent;
+import android.view.View;
+import android.view.ViewGroup;
+import android.view.ViewTreeObserver;
+
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
 
 import me.zhanghai.android.materialedittext.internal.ViewCompat;
 
@@ -19,11 +30,71 @@ import me.zhanghai.android.materialedittext.internal.ViewCompat;
  * A {@code TextInputEditText} that automatically sets its background to
  * {@link MaterialEditTextBackgroundDrawable} and calls {@link Drawable#setHotspot} for it on
  * platforms prior to {@link Build.VERSION_CODES#LOLLIPOP}.
+ * <p>
+ * This view can be constructed on a background thread, e.g. by {@code AsyncLayoutInflater}; its
+ * background doesn't animate until this view is attached to a window.
+ * </p>
  */
 public class MaterialEditText extends TextInputEditText {
 
+    @IntDef({LIGHTWEIGHT_BACKGROUND_AUTO, LIGHTWEIGHT_BACKGROUND_ALWAYS,
+            LIGHTWEIGHT_BACKGROUND_NEVER})
+    @Retention(RetentionPolicy.SOURCE)
+    public @interface LightweightBackgroundMode {}
+
+    /**
+     * Make the background lightweight while this view is disabled or not focusable.
+     */
+    public static final int LIGHTWEIGHT_BACKGROUND_AUTO = 0;
+
+    /**
+     * Always make the background lightweight.
+     */
+    public static final int LIGHTWEIGHT_BACKGROUND_ALWAYS = 1;
+
+    /**
+     * Never make the background lightweight.
+     */
+    public static final int LIGHTWEIGHT_BACKGROUND_NEVER = 2;
+
+    // Hotspot moves smaller than this are not worth a ripple update.
+    private static final float HOTSPOT_MOVE_THRESHOLD = 1;
+
     private MaterialEditTextBackgroundDrawable mBackground;
 
+    @LightweightBackgroundMode
+    private int mLightweightBackgroundMode = LIGHTWEIGHT_BACKGROUND_AUTO;
+
+    private boolean mUnderlineOverlayEnabled;
+    private UnderlineOverlay mUnderlineOverlay;
+    private boolean mUnderlineOverlayAttached;
+    private final ViewTreeObserver.OnPreDrawListener mUnderlineOverlayPreDrawListener =
+            new ViewTreeObserver.OnPreDrawListener() {
+                @Override
+                @SuppressLint("NewApi")
+                public boolean onPreDraw() {
+                    // Our alpha and transformation can be animated without calling their setters,
+                    // e.g. by ViewPropertyAnimator.
+                    mUnderlineOverlay.mirrorViewProperties(MaterialEditText.this);
+                    return true;
+                }
+            };
+    private final Rect mTempRect = new Rect();
+    private final Rect mTempRect2 = new Rect();
+
+    private float mHotspotX;
+    private float mHotspotY;
+    private float mPendingHotspotX;
+    private float mPendingHotspotY;
+    private boolean mHotspotUpdatePosted;
+    private final Runnable mUpdateHotspotRunnable = new Runnable() {
+        @Override
+        public void run() {
+            mHotspotUpdatePosted = false;
+            setBackgroundHotspot(mPendingHotspotX, mPendingHotspotY);
+        }
+    };
+
     public MaterialEditText(Context context) {
         super(context);
 
@@ -42,24 +113,337 @@ public class MaterialEditText extends TextInputEditText {
         init();
     }
 
+    /**
+     * Prepare for creating the first {@code MaterialEditText} faster, by loading classes, resolving
+     * theme attributes and exercising the drawing code once. This can be called on a background
+     * thread at application startup.
+     *
+     * @param context The context with the theme that {@code MaterialEditText}s will be created
+     *                with, e.g. an {@code Activity}, or an {@code Application} with the same theme.
+     */
+    @WorkerThread
+    public static void prewarm(@NonNull Context context) {
+        MaterialEditTextBackgroundDrawable.prewarm(context);
+    }
+
     private void init() {
         mBackground = new MaterialEditTextBackgroundDrawable(getContext());
         ViewCompat.setBackground(this, mBackground);
+        // Keep our background from starting animators, which require a Looper thread, until we
+        // are attached; we may be inflated on a background thread.
+        mBackground.setVisible(false, false);
+        updateBackgroundLightweight();
+    }
+
+    @Override
+    protected void onAttachedToWindow() {
+        super.onAttachedToWindow();
+
+        updateBackgroundVisibility(true);
+        updateUnderlineOverlay(true);
+    }
+
+    @Override
+    protected void onDetachedFromWindow() {
+        super.onDetachedFromWindow();
+
+        updateBackgroundVisibility(false);
+        updateUnderlineOverlay(false);
+        cancelHotspotUpdate();
+    }
+
+    @Override
+    @SuppressLint("NewApi")
+    protected void onConfigurationChanged(Configuration newConfig) {
+        super.onConfigurationChanged(newConfig);
+
+        if (getBackground() != mBackground) {
+            return;
+        }
+
+        // Refresh our background in place, e.g. for a night mode change handled without
+        // recreating the activity.
+        Rect oldPadding = mTempRect2;
+        mBackground.getPadding(oldPadding);
+        mBackground.onConfigurationChanged(getContext());
+        mBackground.getPadding(mTempRect);
+        // Only update our padding if it came from our background.
+        if (!mTempRect.equals(oldPadding) && getPaddingLeft() == oldPadding.left
+                && getPaddingTop() == oldPadding.top && getPaddingRight() == oldPadding.right
+                && getPaddingBottom() == oldPadding.bottom) {
+            setPadding(mTempRect.left, mTempRect.top, mTempRect.right, mTempRect.bottom);
+        }
+        if (mUnderlineOverlay != null) {
+            mUnderlineOverlay.setDensity(getResources().getDisplayMetrics().density);
+        }
+        if (mUnderlineOverlayAttached) {
+            layoutUnderlineOverlay();
+        }
+    }
+
+    @Override
+    protected void onWindowVisibilityChanged(int visibility) {
+        super.onWindowVisibilityChanged(visibility);
+
+        updateBackgroundVisibility(true);
+    }
+
+    @Override
+    protected void onVisibilityChanged(@NonNull View changedView, int visibility) {
+        super.onVisibilityChanged(changedView, visibility);
+
+        updateBackgroundVisibility(true);
+    }
+
+    /*
+     * The framework only notifies our background of window visibility and attachment since
+     * Nougat, so we do it ourselves to stop ripple animations when they cannot be seen.
+     */
+    private void updateBackgroundVisibility(boolean attached) {
+        // Can be called from super constructor before we are initialized.
+        if (mBackground == null) {
+            return;
+        }
+        // We are still attached during onDetachedFromWindow(). When not attached at all,
+        // getWindowVisibility() returns GONE and isShown() returns false.
+        boolean visible = attached && getWindowVisibility() == VISIBLE && isShown()
+                && getBackground() == mBackground;
+        // Hiding our background ends all its running animators, which would otherwise keep it and
+        // us, through its callback, alive from the animation handler after we are detached, even
+        // if it is no longer our background.
+        mBackground.setVisible(visible, false);
+    }
+
+    /**
+     * Get when the background is made lightweight. The default is
+     * {@link #LIGHTWEIGHT_BACKGROUND_AUTO}.
+     *
+     * @return The mode for making the background lightweight.
+     *
+     * @see #setLightweightBackgroundMode(int)
+     */
+    @LightweightBackgroundMode
+    public int getLightweightBackgroundMode() {
+        return mLightweightBackgroundMode;
+    }
+
+    /**
+     * Set when the background should be made lightweight. The default is
+     * {@link #LIGHTWEIGHT_BACKGROUND_AUTO}.
+     * <p>
+     * A lightweight background draws a static underline without any ripple state, and is made
+     * fully animated again on the fly when it no longer needs to be lightweight.
+     * </p>
+     *
+     * @param mode The mode for making the background lightweight.
+     *
+     * @see MaterialEditTextBackgroundDrawable#setLightweight(boolean)
+     */
+    public void setLightweightBackgroundMode(@LightweightBackgroundMode int mode) {
+        if (mLightweightBackgroundMode != mode) {
+            mLightweightBackgroundMode = mode;
+            updateBackgroundLightweight();
+        }
+    }
+
+    @Override
+    public void setEnabled(boolean enabled) {
+        super.setEnabled(enabled);
+
+        updateBackgroundLightweight();
+    }
+
+    @Override
+    public void setFocusable(boolean focusable) {
+        super.setFocusable(focusable);
+
+        updateBackgroundLightweight();
+    }
+
+    @Override
+    public void setFocusable(int focusable) {
+        super.setFocusable(focusable);
+
+        updateBackgroundLightweight();
+    }
+
+    private void updateBackgroundLightweight() {
+        // Can be called from super constructor before we are initialized.
+        if (mBackground == null) {
+            return;
+        }
+        boolean lightweight;
+        switch (mLightweightBackgroundMode) {
+            case LIGHTWEIGHT_BACKGROUND_ALWAYS:
+                lightweight = true;
+                break;
+            case LIGHTWEIGHT_BACKGROUND_NEVER:
+                lightweight = false;
+                break;
+            default:
+                lightweight = !isEnabled() || !isFocusable();
+        }
+        if (mBackground.isLightweight() != lightweight) {
+            mBackground.setLightweight(lightweight);
+            // A lightweight background draws its activated underline by itself.
+            updateUnderlineOverlay(getWindowToken() != null);
+        }
+    }
+
+    /**
+     * Get whether the activated underline is rendered by an overlay view. The default is
+     * {@code false}.
+     *
+     * @return Whether the activated underline is rendered by an overlay view.
+     *
+     * @see #setUnderlineOverlayEnabled(boolean)
+     */
+    public boolean isUnderlineOverlayEnabled() {
+        return mUnderlineOverlayEnabled;
+    }
+
+    /**
+     * Set whether the activated underline should be rendered by an overlay view. The default is
+     * {@code false}.
+     * <p>
+     * When enabled, the activated underline is a view in the overlay of the parent of this view,
+     * animated with view properties instead of redrawing this view for every frame of a ripple.
+     * The overlay view mirrors the visibility, alpha and transformation of this view. Multiple
+     * overlapping ripples are not rendered in this mode. This requires
+     * {@link Build.VERSION_CODES#JELLY_BEAN_MR2} and a parent {@link ViewGroup}, and is ignored
+     * otherwise.
+     * </p>
+     *
+     * @param enabled Whether the activated underline should be rendered by an overlay view.
+     */
+    public void setUnderlineOverlayEnabled(boolean enabled) {
+        if (mUnderlineOverlayEnabled != enabled) {
+            mUnderlineOverlayEnabled = enabled;
+            updateUnderlineOverlay(getWindowToken() != null);
+        }
+    }
+
+    @SuppressLint("NewApi")
+    private void updateUnderlineOverlay(boolean attached) {
+        boolean attach = mUnderlineOverlayEnabled && attached && !mBackground.isLightweight()
+                && Build.VERSION.SDK_INT >= Build.VERSION_CODES.JELLY_BEAN_MR2
+                && getParent() instanceof ViewGroup && getBackground() == mBackground;
+        if (attach) {
+            if (mUnderlineOverlay == null) {
+                mUnderlineOverlay = new UnderlineOverlay(getContext(),
+                        getResources().getDisplayMetrics().density);
+            }
+            mUnderlineOverlay.attach((ViewGroup) getParent());
+            if (!mUnderlineOverlayAttached) {
+                getViewTreeObserver().addOnPreDrawListener(mUnderlineOverlayPreDrawListener);
+                mUnderlineOverlayAttached = true;
+            }
+            layoutUnderlineOverlay();
+            mBackground.setUnderlineOverlay(mUnderlineOverlay);
+        } else if (mUnderlineOverlayAttached) {
+            mBackground.setUnderlineOverlay(null);
+            mUnderlineOverlay.detach();
+            getViewTreeObserver().removeOnPreDrawListener(mUnderlineOverlayPreDrawListener);
+            mUnderlineOverlayAttached = false;
+        }
+    }
+
+    @Override
+    protected void onLayout(boolean changed, int left, int top, int right, int bottom) {
+        super.onLayout(changed, left, top, right, bottom);
+
+        if (mUnderlineOverlayAttached) {
+            layoutUnderlineOverlay();
+        }
+    }
+
+    @SuppressLint("NewApi")
+    private void layoutUnderlineOverlay() {
+        // Our background bounds are only updated when it is drawn.
+        mTempRect.set(0, 0, getWidth(), getHeight());
+        mBackground.getActivatedRect(mTempRect, mTempRect);
+        mTempRect.offset(getLeft(), getTop());
+        mUnderlineOverlay.layout(mTempRect.left, mTempRect.top, mTempRect.right,
+                mTempRect.bottom);
+        mUnderlineOverlay.mirrorViewProperties(this);
     }
 
     @Override
     @SuppressLint("NewApi")
     public boolean onTouchEvent(MotionEvent event) {
+
+        if (Build.VERSION.SDK_INT < Build.VERSION_CODES.LOLLIPOP
+                && event.getActionMasked() == MotionEvent.ACTION_UP) {
+            // Deliver the last coalesced position before we can be unpressed, so that the ripple
+            // exits from where the touch ended.
+            flushHotspotUpdate();
+        }
+
         boolean consumed = super.onTouchEvent(event);
 
         if (Build.VERSION.SDK_INT < Build.VERSION_CODES.LOLLIPOP) {
-            int action = event.getAction();
-            if (isEnabled() && (isClickable() || isLongClickable())
-                    && (action == MotionEvent.ACTION_DOWN || action == MotionEvent.ACTION_MOVE)) {
-                mBackground.setHotspot(event.getX(), event.getY());
+            int action = event.getActionMasked();
+            if (isEnabled() && (isClickable() || isLongClickable())) {
+                switch (action) {
+                    case MotionEvent.ACTION_DOWN:
+                        cancelHotspotUpdate();
+                        setBackgroundHotspot(event.getX(), event.getY());
+                        break;
+                    case MotionEvent.ACTION_MOVE:
+                        // The current position of a batched move event is its latest one, so
+                        // historical positions can be ignored.
+                        postHotspotUpdate(event.getX(), event.getY());
+                        break;
+                    case MotionEvent.ACTION_CANCEL:
+                        cancelHotspotUpdate();
+                        break;
+                }
             }
         }
 
         return consumed;
     }
+
+    @SuppressLint("NewApi")
+    private void setBackgroundHotspot(float x, float y) {
+        mHotspotX = x;
+        mHotspotY = y;
+        mBackground.setHotspot(x, y);
+    }
+
+    /*
+     * Coalesce hotspot updates from move events to at most one per frame.
+     */
+    private void postHotspotUpdate(float x, float y) {
+
+        if (Math.abs(x - mHotspotX) < HOTSPOT_MOVE_THRESHOLD
+                && Math.abs(y - mHotspotY) < HOTSPOT_MOVE_THRESHOLD) {
+            if (mHotspotUpdatePosted) {
+                // Moved back to where we are; no update needed.
+                cancelHotspotUpdate();
+            }
+            return;
+        }
+
+        mPendingHotspotX = x;
+        mPendingHotspotY = y;
+        if (!mHotspotUpdatePosted) {
+            mHotspotUpdatePosted = true;
+            ViewCompat.postOnAnimation(this, mUpdateHotspotRunnable);
+        }
+    }
+
+    private void flushHotspotUpdate() {
+        if (mHotspotUpdatePosted) {
+            cancelHotspotUpdate();
+            setBackgroundHotspot(mPendingHotspotX, mPendingHotspotY);
+        }
+    }
+
+    private void cancelHotspotUpdate() {
+        if (mHotspotUpdatePosted) {
+            removeCallbacks(mUpdateHotspotRunnable);
+            mHotspotUpdatePosted = false;
+        }
+    }
 }
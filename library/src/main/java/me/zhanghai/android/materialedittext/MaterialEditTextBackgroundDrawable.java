@@ -7,27 +7,71 @@ package me.zhanghai.android.materialedittext;
 
 import android.annotation.SuppressLint;
 import android.annotation.TargetApi;
+import android.app.ActivityManager;
+import android.content.ContentResolver;
 import android.content.Context;
 import android.content.res.ColorStateList;
 import android.content.res.Resources;
+import android.graphics.Bitmap;
 import android.graphics.Canvas;
 import android.graphics.Color;
 import android.graphics.Outline;
 import android.graphics.Paint;
+import android.graphics.PorterDuff;
 import android.graphics.Rect;
+import android.graphics.RectF;
 import android.graphics.drawable.Drawable;
 import android.os.Build;
+import android.provider.Settings;
+import android.view.animation.AnimationUtils;
+import android.support.annotation.IntDef;
 import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
 import android.util.Log;
 import android.widget.EditText;
 
-import me.zhanghai.android.materialedittext.internal.ThemeUtils;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+
+import me.zhanghai.android.materialedittext.internal.CanvasUtils;
 
 /**
  * A Material Design background {@link Drawable} for {@link EditText}.
+ * <p>
+ * This drawable can be constructed on any thread. It only creates animators while visible, so it
+ * should be kept invisible with {@link #setVisible(boolean, boolean)} until it is used on a thread
+ * with a {@link android.os.Looper}.
+ * </p>
  */
 public class MaterialEditTextBackgroundDrawable extends BasePaintDrawable {
 
+    @IntDef({QUALITY_AUTO, QUALITY_FULL, QUALITY_REDUCED, QUALITY_STATIC})
+    @Retention(RetentionPolicy.SOURCE)
+    public @interface Quality {}
+
+    /**
+     * Choose the quality according to the device, i.e. {@link #QUALITY_REDUCED} on low RAM devices
+     * and {@link #QUALITY_STATIC} when animations are turned off in system settings.
+     */
+    public static final int QUALITY_AUTO = -1;
+
+    /**
+     * Fully animated and anti-aliased ripples.
+     */
+    public static final int QUALITY_FULL = 0;
+
+    /**
+     * Fewer simultaneous ripples, redraws for ripple animations capped at a lower frame rate, and
+     * no anti-aliasing. Only the redraws are capped; ripple animators still run on every frame.
+     */
+    public static final int QUALITY_REDUCED = 1;
+
+    /**
+     * No animation at all; state changes take effect immediately, as in
+     * {@link #jumpToCurrentState()}.
+     */
+    public static final int QUALITY_STATIC = 2;
+
     private static final String TAG = MaterialEditTextBackgroundDrawable.class.getName();
 
     private static final int INTRINSIC_WIDTH_DP = 20;
@@ -42,29 +86,73 @@ public class MaterialEditTextBackgroundDrawable extends BasePaintDrawable {
     private static final int ACTIVATED_HEIGHT_DP = 2;
 
     // As android.graphics.drawable.RippleDrawable.MAX_RIPPLES.
-    private static final int MAX_RIPPLES = 10;
+    static final int MAX_RIPPLES = 10;
+
+    static final int REDUCED_MAX_RIPPLES = 3;
+    // 30 fps.
+    private static final int REDUCED_RIPPLE_FRAME_INTERVAL = 33;
+
+    // Ripples are stored in a single array tagged with their state, in the order they entered that
+    // state.
+    private static final byte RIPPLE_ENTERING = 0;
+    private static final byte RIPPLE_FILLING = 1;
+    private static final byte RIPPLE_FILLED = 2;
+    private static final byte RIPPLE_EXITING = 3;
+
+    private static final int INITIAL_RIPPLE_CAPACITY = 2;
 
-    private final Rect mPadding;
+    @Quality
+    private static int sDefaultQuality = QUALITY_AUTO;
 
-    private final int mIntrinsicWidth;
-    private final int mIntrinsicHeight;
-    private final int mDrawingRectTopFromBottom;
+    // Shared by all lightweight drawables, which are only drawn on the main thread.
+    private static Paint sLightweightPaint;
 
-    private final int mDefaultHeight;
-    private final int mActivatedHeight;
+    private final Rect mPadding = new Rect();
 
-    private final ColorStateList mHintColorList;
-    private final float mDisabledAlpha;
+    private int mIntrinsicWidth;
+    private int mIntrinsicHeight;
+    private int mDrawingRectTopFromBottom;
+
+    private int mDefaultHeight;
+    private int mActivatedHeight;
+
+    private StateColorTable mHintColorTable;
+    private float mDisabledAlpha;
+
+    // Whether some of our theme attributes are missing from the theme we resolved them from.
+    private boolean mHasUnresolvedThemeAttributes;
 
     private int mHintColor;
     private float mHintColorAlpha;
 
     private float mDensity;
 
+    // Whether our tint is colorControlActivated from our theme, instead of one set by the app.
+    private boolean mThemeTint = true;
+
+    @Quality
+    private int mQuality;
+
+    private boolean mPixelSnappingEnabled;
+
+    private boolean mLightweight;
+
+    private long mLastAnimationInvalidateTime;
+
     private Rect mDefaultRect = new Rect();
     private Rect mActivatedRect = new Rect();
 
     private Paint mDefaultPaint;
+    private RectRenderNode mDefaultRenderNode;
+
+    // Used instead of drawing rects on a software canvas.
+    private BitmapStrip mDefaultStrip;
+    private BitmapStrip mRippleStrip;
+    private RectF mTempRectF;
+
+    private UnderlineOverlay mUnderlineOverlay;
+
+    private BackgroundTraceListener mTraceListener;
 
     private boolean mEnabled;
     private boolean mPressed;
@@ -74,23 +162,38 @@ public class MaterialEditTextBackgroundDrawable extends BasePaintDrawable {
     private boolean mHasPendingRipple = false;
     private float mPendingRipplePosition;
 
-    private LinearRipple mEnteringRipple;
-    private LinearRipple[] mFillingRipples = new LinearRipple[MAX_RIPPLES];
-    private int mFillingRippleCount;
-    private LinearRipple mFilledRipple;
-    private LinearRipple[] mExitingRipples = new LinearRipple[MAX_RIPPLES];
-    private int mExitingRippleCount;
+    // Allocated lazily, since most fields never have a ripple.
+    private LinearRipple[] mRipples;
+    private byte[] mRippleStates;
+    private int mRippleCount;
 
     @SuppressLint("NewApi")
     public MaterialEditTextBackgroundDrawable(Context context) {
 
-        int colorControlActivated = ThemeUtils.getColorFromAttrRes(R.attr.colorControlActivated,
-                context);
-        // setTint() has been overridden for compatibility; DrawableCompat won't work because
-        // wrapped Drawable won't be Animatable.
-        setTint(colorControlActivated);
+        updateThemeAttributes(ThemeAttributes.get(context));
+        updateDimensions(context.getResources());
+
+        mQuality = resolveQuality(sDefaultQuality, context);
+    }
+
+    private void updateThemeAttributes(ThemeAttributes themeAttributes) {
+
+        if (mThemeTint) {
+            // setTint() has been overridden for compatibility; DrawableCompat won't work because
+            // wrapped Drawable won't be Animatable. The color state list is shared by all drawables
+            // with the same theme.
+            super.setTintList(themeAttributes.getColorControlActivatedList());
+        }
+
+        mHintColorTable = themeAttributes.getHintColorTable();
+        updateHintColor();
+        mDisabledAlpha = themeAttributes.getDisabledAlpha();
+
+        mHasUnresolvedThemeAttributes = themeAttributes.hasUnresolved();
+    }
+
+    private void updateDimensions(Resources resources) {
 
-        Resources resources = context.getResources();
         mDensity = resources.getDisplayMetrics().density;
 
         mIntrinsicWidth = (int) (INTRINSIC_WIDTH_DP * mDensity + 0.5f);
@@ -100,16 +203,272 @@ public class MaterialEditTextBackgroundDrawable extends BasePaintDrawable {
         int paddingHorizontal = (int) (INTRINSIC_PADDING_HORIZONTAL * mDensity);
         int paddingTop = (int) (INTRINSIC_PADDING_TOP * mDensity);
         int paddingBottom = (int) (INTRINSIC_PADDING_BOTTOM * mDensity);
-        mPadding = new Rect(paddingHorizontal, paddingTop, paddingHorizontal, paddingBottom);
+        mPadding.set(paddingHorizontal, paddingTop, paddingHorizontal, paddingBottom);
 
         mDrawingRectTopFromBottom = (int) (DRAWING_RECT_TOP_FROM_BOTTOM_DP * mDensity + 0.5f);
         mDefaultHeight = (int) (DEFAULT_HEIGHT_DP * mDensity + 0.5f);
         mActivatedHeight = (int) (ACTIVATED_HEIGHT_DP * mDensity + 0.5f);
 
-        mHintColorList = ThemeUtils.getColorStateListFromAttrRes(android.R.attr.textColorHint,
+        for (int i = 0; i < mRippleCount; ++i) {
+            mRipples[i].setDensity(mDensity);
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * This drawable resolves its theme attributes from the theme of the context it is created
+     * with, so as with framework drawables, this is only {@code true} if some of them were missing
+     * from that theme and are left to resolve.
+     * </p>
+     */
+    @Override
+    public boolean canApplyTheme() {
+        return mHasUnresolvedThemeAttributes;
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * The colors and dimensions of this drawable are resolved again from the theme in place,
+     * keeping its state and running animations.
+     * </p>
+     */
+    @Override
+    @TargetApi(Build.VERSION_CODES.LOLLIPOP)
+    public void applyTheme(@NonNull Resources.Theme theme) {
+        super.applyTheme(theme);
+
+        Resources resources = theme.getResources();
+        updateThemeAttributes(ThemeAttributes.get(theme, resources));
+        updateDimensionsAndBounds(resources);
+    }
+
+    /**
+     * Resolve the colors and dimensions of this drawable again in place after a configuration
+     * change, e.g. of night mode or density, keeping its state and running animations. This is
+     * needed when the configuration change is handled without recreating the views, e.g. with
+     * {@code android:configChanges}.
+     * <p>
+     * If the padding of this drawable changes, the padding of its view won't be updated
+     * automatically.
+     * </p>
+     *
+     * @param context The context with the new configuration and the theme of this drawable.
+     */
+    public void onConfigurationChanged(@NonNull Context context) {
+        updateThemeAttributes(ThemeAttributes.get(context));
+        updateDimensionsAndBounds(context.getResources());
+    }
+
+    private void updateDimensionsAndBounds(Resources resources) {
+        updateDimensions(resources);
+        // Our rects are computed from our dimensions.
+        updateBounds(getBounds());
+        if (mUnderlineOverlay != null) {
+            updateUnderlineOverlayPaint();
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * A tint set by this method replaces {@code colorControlActivated} from the theme, and is kept
+     * when the theme is applied again or the configuration changes.
+     * </p>
+     */
+    @Override
+    public void setTintList(@Nullable ColorStateList tint) {
+        mThemeTint = false;
+        super.setTintList(tint);
+    }
+
+    /*
+     * Load classes, resolve theme attributes and exercise the state and draw paths once, so that
+     * the first real instance is created and drawn faster. Can be called on any thread.
+     */
+    static void prewarm(Context context) {
+
+        MaterialEditTextBackgroundDrawable drawable = new MaterialEditTextBackgroundDrawable(
                 context);
-        updateHintColor();
-        mDisabledAlpha = ThemeUtils.getFloatFromAttrRes(android.R.attr.disabledAlpha, context);
+        // Never start animators here; we may not be on a Looper thread.
+        drawable.setVisible(false, false);
+        int width = 10 * drawable.getIntrinsicWidth();
+        int height = drawable.getIntrinsicHeight();
+        drawable.setBounds(0, 0, width, height);
+        drawable.setState(new int[] { android.R.attr.state_enabled,
+                android.R.attr.state_focused });
+        drawable.setError(true);
+        LinearRipple.DECELERATE_INTERPOLATOR.getInterpolation(0.5f);
+
+        Bitmap bitmap = Bitmap.createBitmap(width, height, Bitmap.Config.ARGB_8888);
+        drawable.draw(new Canvas(bitmap));
+        bitmap.recycle();
+    }
+
+    /**
+     * Get the quality that newly created instances will use. The default is
+     * {@link #QUALITY_AUTO}.
+     *
+     * @return The default quality.
+     */
+    @Quality
+    public static int getDefaultQuality() {
+        return sDefaultQuality;
+    }
+
+    /**
+     * Set the quality that newly created instances will use, overriding the automatic choice
+     * according to the device. The default is {@link #QUALITY_AUTO}.
+     *
+     * @param quality The default quality.
+     */
+    public static void setDefaultQuality(@Quality int quality) {
+        sDefaultQuality = quality;
+    }
+
+    @Quality
+    private static int resolveQuality(@Quality int quality, Context context) {
+
+        if (quality != QUALITY_AUTO) {
+            return quality;
+        }
+
+        if (getAnimatorDurationScale(context) == 0) {
+            return QUALITY_STATIC;
+        }
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.KITKAT) {
+            ActivityManager activityManager = (ActivityManager) context.getSystemService(
+                    Context.ACTIVITY_SERVICE);
+            if (activityManager != null && activityManager.isLowRamDevice()) {
+                return QUALITY_REDUCED;
+            }
+        }
+        return QUALITY_FULL;
+    }
+
+    @SuppressWarnings("deprecation")
+    private static float getAnimatorDurationScale(Context context) {
+        ContentResolver contentResolver = context.getContentResolver();
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.JELLY_BEAN_MR1) {
+            return Settings.Global.getFloat(contentResolver,
+                    Settings.Global.ANIMATOR_DURATION_SCALE, 1);
+        } else {
+            return Settings.System.getFloat(contentResolver,
+                    Settings.System.ANIMATOR_DURATION_SCALE, 1);
+        }
+    }
+
+    /**
+     * Get the quality of this drawable.
+     *
+     * @return The quality of this drawable, never {@link #QUALITY_AUTO}.
+     */
+    @Quality
+    public int getQuality() {
+        return mQuality;
+    }
+
+    /**
+     * Set the quality of this drawable. The default is {@link #getDefaultQuality()}.
+     *
+     * @param context The context used to resolve {@link #QUALITY_AUTO}.
+     * @param quality The quality of this drawable.
+     */
+    public void setQuality(Context context, @Quality int quality) {
+        quality = resolveQuality(quality, context);
+        if (mQuality != quality) {
+            mQuality = quality;
+            if (mQuality == QUALITY_STATIC) {
+                jumpToCurrentStateInternal();
+            } else {
+                invalidateSelf();
+            }
+        }
+    }
+
+    /**
+     * Get whether this drawable draws without anti-aliasing, snapping ripple edges to pixels. The
+     * default is {@code false}.
+     *
+     * @return Whether pixel snapping is enabled.
+     */
+    public boolean isPixelSnappingEnabled() {
+        return mPixelSnappingEnabled;
+    }
+
+    /**
+     * Set whether this drawable should draw without anti-aliasing, snapping ripple edges to pixels
+     * and drawing their fractional edges as columns with partial alpha. This looks the same as
+     * anti-aliased drawing when this drawable is drawn at integer offsets without scaling, at a
+     * lower rasterization cost. The default is {@code false}.
+     *
+     * @param enabled Whether pixel snapping should be enabled.
+     */
+    public void setPixelSnappingEnabled(boolean enabled) {
+        if (mPixelSnappingEnabled != enabled) {
+            mPixelSnappingEnabled = enabled;
+            invalidateSelf();
+        }
+    }
+
+    /**
+     * Get whether this drawable is lightweight. The default is {@code false}.
+     *
+     * @return Whether this drawable is lightweight.
+     *
+     * @see #setLightweight(boolean)
+     */
+    public boolean isLightweight() {
+        return mLightweight;
+    }
+
+    /**
+     * Set whether this drawable should be lightweight. The default is {@code false}.
+     * <p>
+     * A lightweight drawable never animates and draws its underlines with a paint shared by all
+     * lightweight drawables, releasing its ripples and drawing caches, which suits fields that are
+     * disabled or read-only. It becomes fully animated again when this is set to {@code false}.
+     * </p>
+     *
+     * @param lightweight Whether this drawable should be lightweight.
+     */
+    public void setLightweight(boolean lightweight) {
+
+        if (mLightweight == lightweight) {
+            return;
+        }
+
+        mLightweight = lightweight;
+        if (mLightweight) {
+            mHasPendingRipple = false;
+            removeRipples(RIPPLE_ENTERING);
+            removeRipples(RIPPLE_FILLING);
+            removeRipples(RIPPLE_FILLED);
+            removeRipples(RIPPLE_EXITING);
+            releaseRipples();
+            if (mUnderlineOverlay != null) {
+                mUnderlineOverlay.jumpToCurrentState(false);
+            }
+            releaseDrawingCaches();
+            mDefaultPaint = null;
+            mTempRectF = null;
+            invalidateSelf();
+        } else {
+            jumpToCurrentStateInternal();
+        }
+    }
+
+    /*
+     * Set the listener for the events delivered to this drawable from outside, or null to stop
+     * listening.
+     */
+    void setTraceListener(BackgroundTraceListener traceListener) {
+        mTraceListener = traceListener;
+    }
+
+    private boolean isAntiAlias() {
+        return mQuality == QUALITY_FULL && !mPixelSnappingEnabled;
     }
 
     /**
@@ -142,31 +501,37 @@ public class MaterialEditTextBackgroundDrawable extends BasePaintDrawable {
      */
     @Override
     protected void onBoundsChange(Rect bounds) {
+        if (mTraceListener != null) {
+            mTraceListener.onBoundsChange(bounds);
+        }
+        updateBounds(bounds);
+    }
+
+    private void updateBounds(Rect bounds) {
 
         int drawingRectLeft = bounds.left + mPadding.left;
         int drawingRectTop = bounds.bottom - mDrawingRectTopFromBottom;
         int drawingRectRight = bounds.right - mPadding.right;
         mDefaultRect.set(drawingRectLeft, drawingRectTop, drawingRectRight,
                 drawingRectTop + mDefaultHeight);
-        mActivatedRect.set(drawingRectLeft, drawingRectTop, drawingRectRight,
-                drawingRectTop + mActivatedHeight);
+        getActivatedRect(bounds, mActivatedRect);
 
-        if (mEnteringRipple != null) {
-            mEnteringRipple.onBoundsChange(mActivatedRect);
-        }
-        for (int i = 0; i < mFillingRippleCount; ++i) {
-            mFillingRipples[i].onBoundsChange(mActivatedRect);
-        }
-        if (mFilledRipple != null) {
-            mFilledRipple.onBoundsChange(mActivatedRect);
-        }
-        for (int i = 0; i < mExitingRippleCount; ++i) {
-            mExitingRipples[i].onBoundsChange(mActivatedRect);
+        for (int i = 0; i < mRippleCount; ++i) {
+            mRipples[i].onBoundsChange(mActivatedRect);
         }
 
         invalidateSelf();
     }
 
+    /*
+     * Get the rect for the activated underline when this drawable has the given bounds.
+     */
+    void getActivatedRect(Rect bounds, Rect outRect) {
+        int drawingRectTop = bounds.bottom - mDrawingRectTopFromBottom;
+        outRect.set(bounds.left + mPadding.left, drawingRectTop, bounds.right - mPadding.right,
+                drawingRectTop + mActivatedHeight);
+    }
+
     /**
      * {@inheritDoc}
      */
@@ -177,8 +542,70 @@ public class MaterialEditTextBackgroundDrawable extends BasePaintDrawable {
     }
 
     private boolean hasRipple() {
-        return mEnteringRipple != null || mFillingRippleCount > 0 || mFilledRipple != null
-                || mExitingRippleCount >= 0;
+        return mRippleCount > 0;
+    }
+
+    /**
+     * Get the number of ripples alive in this drawable, e.g. to monitor its cost in a form. This is
+     * at most one while idle, for the filled ripple of an activated drawable, and never more than
+     * the ripple budget of its quality.
+     * <p>
+     * A ripple that has finished exiting, or has been covered by a filled ripple, is no longer
+     * counted. A lightweight drawable has no ripples, and ripples rendered by an underline overlay
+     * are not counted.
+     * </p>
+     *
+     * @return The number of ripples.
+     */
+    public int getRippleCount() {
+        // Count the ripples that updateRipples() keeps, regardless of when it last ran.
+        if (indexOfFilledRipple() != -1) {
+            return 1;
+        }
+        int count = 0;
+        for (int i = 0; i < mRippleCount; ++i) {
+            if (!(mRippleStates[i] == RIPPLE_EXITING && mRipples[i].hasExited())) {
+                ++count;
+            }
+        }
+        return count;
+    }
+
+    /*
+     * Get the number of ripples with a running animation. Every animator started by this drawable
+     * belongs to one of them.
+     */
+    int getAnimatingRippleCount() {
+        int count = 0;
+        for (int i = 0; i < mRippleCount; ++i) {
+            if (mRipples[i].isAnimating()) {
+                ++count;
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Get whether this drawable has any running animation, including those of its underline
+     * overlay. A drawable that isn't animating doesn't invalidate itself until its state changes,
+     * so this can be used, e.g. in tests, to find a field that keeps redrawing while visually
+     * idle.
+     * <p>
+     * An invisible or lightweight drawable is never animating.
+     * </p>
+     *
+     * @return Whether this drawable is animating.
+     */
+    public boolean isAnimating() {
+        if (mUnderlineOverlay != null) {
+            return mUnderlineOverlay.isAnimating();
+        }
+        for (int i = 0; i < mRippleCount; ++i) {
+            if (mRipples[i].isAnimating()) {
+                return true;
+            }
+        }
+        return false;
     }
 
     /**
@@ -186,15 +613,48 @@ public class MaterialEditTextBackgroundDrawable extends BasePaintDrawable {
      */
     @Override
     public void setHotspot(float x, float y) {
+        if (mTraceListener != null) {
+            mTraceListener.onHotspotChange(x, y);
+        }
+        if (mLightweight) {
+            return;
+        }
         x -= mActivatedRect.left;
-        if (mEnteringRipple == null) {
+        if (mUnderlineOverlay != null && mUnderlineOverlay.isEntering()) {
+            mUnderlineOverlay.moveTo(x);
+            return;
+        }
+        int enteringIndex = indexOfRipple(RIPPLE_ENTERING);
+        if (enteringIndex == -1) {
             mPendingRipplePosition = x;
             mHasPendingRipple = true;
         } else {
-            mEnteringRipple.moveTo(x);
+            mRipples[enteringIndex].moveTo(x);
         }
     }
 
+    /*
+     * Set the overlay to render the activated underline with instead of ripples, or null to go
+     * back to drawing ripples.
+     */
+    void setUnderlineOverlay(UnderlineOverlay underlineOverlay) {
+        if (mUnderlineOverlay == underlineOverlay) {
+            return;
+        }
+        if (mUnderlineOverlay != null) {
+            mUnderlineOverlay.jumpToCurrentState(false);
+        }
+        mUnderlineOverlay = underlineOverlay;
+        if (mUnderlineOverlay != null) {
+            mUnderlineOverlay.setVisible(isVisible());
+            removeRipples(RIPPLE_ENTERING);
+            removeRipples(RIPPLE_FILLING);
+            removeRipples(RIPPLE_FILLED);
+            removeRipples(RIPPLE_EXITING);
+        }
+        jumpToCurrentStateInternal();
+    }
+
     /**
      * Get whether this drawable is in error state. The default is {@code false}.
      *
@@ -210,9 +670,29 @@ public class MaterialEditTextBackgroundDrawable extends BasePaintDrawable {
      * @param error Whether this drawable should be in error state.
      */
     public void setError(boolean error) {
+        setError(error, true);
+    }
+
+    /**
+     * Set whether this drawable is in error state. The default is {@code false}.
+     *
+     * @param error Whether this drawable should be in error state.
+     * @param animate Whether to animate the change, or to take effect immediately as in
+     *                {@link #jumpToCurrentState()}.
+     */
+    public void setError(boolean error, boolean animate) {
         if (mError != error) {
+            if (mTraceListener != null) {
+                mTraceListener.onErrorChange(error, animate);
+            }
             mError = error;
-            onStateChanged();
+            updateHintColor();
+            updateTintFilter();
+            if (animate) {
+                onStateChanged();
+            } else {
+                jumpToCurrentStateInternal();
+            }
         }
     }
 
@@ -230,24 +710,16 @@ public class MaterialEditTextBackgroundDrawable extends BasePaintDrawable {
     @Override
     protected boolean onStateChange(int[] stateSet) {
 
-        updateHintColor();
-
-        mEnabled = false;
-        mPressed = false;
-        mFocused = false;
-        for (int state : stateSet) {
-            switch (state) {
-                case android.R.attr.state_enabled:
-                    mEnabled = true;
-                    break;
-                case android.R.attr.state_pressed:
-                    mPressed = true;
-                    break;
-                case android.R.attr.state_focused:
-                    mFocused = true;
-                    break;
-            }
+        int stateMask = StateColorTable.getStateMask(stateSet);
+        if (mTraceListener != null) {
+            mTraceListener.onStateChange(stateMask);
         }
+        mEnabled = (stateMask & StateColorTable.STATE_ENABLED) != 0;
+        mPressed = (stateMask & StateColorTable.STATE_PRESSED) != 0;
+        mFocused = (stateMask & StateColorTable.STATE_FOCUSED) != 0;
+
+        updateHintColor();
+        updateTintFilter();
 
         onStateChanged();
 
@@ -255,17 +727,56 @@ public class MaterialEditTextBackgroundDrawable extends BasePaintDrawable {
         return true;
     }
 
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    protected int getStateMask() {
+        int stateMask = 0;
+        if (mEnabled) {
+            stateMask |= StateColorTable.STATE_ENABLED;
+        }
+        if (mPressed) {
+            stateMask |= StateColorTable.STATE_PRESSED;
+        }
+        if (mFocused) {
+            stateMask |= StateColorTable.STATE_FOCUSED;
+        }
+        if (mError) {
+            stateMask |= StateColorTable.STATE_ERROR;
+        }
+        return stateMask;
+    }
+
     private void updateHintColor() {
-        mHintColor = mHintColorList.getColorForState(getState(), Color.TRANSPARENT);
+        mHintColor = mHintColorTable.getColor(getStateMask());
         mHintColorAlpha = (float) Color.alpha(mHintColor) / 0xFF;
     }
 
     private void onStateChanged() {
 
+        if (mLightweight) {
+            invalidateSelf();
+            return;
+        }
+
+        // Don't start any animation when we cannot be seen or shouldn't animate; snap to the final
+        // state instead.
+        if (!isVisible() || mQuality == QUALITY_STATIC) {
+            jumpToCurrentStateInternal();
+            return;
+        }
+
+        if (mUnderlineOverlay != null) {
+            updateUnderlineOverlay();
+            invalidateSelf();
+            return;
+        }
+
         updateRipples();
 
         // Branch into states and operate on each non-exiting group of ripple.
-        if (!mEnabled || (!mPressed && !mFocused && !mError)) {
+        if (!isActivated()) {
             // Disabled, or enabled and unpressed and unfocused.
             // Exit non-exiting ripples.
             exitRipples();
@@ -273,17 +784,18 @@ public class MaterialEditTextBackgroundDrawable extends BasePaintDrawable {
             // Enabled and pressed.
             // Enter a new ripple if no ripple is entering or filled; leave filling, filled ripples
             // unchanged.
-            if (mEnteringRipple == null && mFilledRipple == null) {
+            if (!hasRipple(RIPPLE_ENTERING) && !hasRipple(RIPPLE_FILLED)) {
                 createAndEnterRipple();
             }
         } else {
             // Enabled, unpressed, focused || error.
             // Fill the entering ripple if exists.
-            if (mEnteringRipple != null) {
-                fillEnteringRipple();
+            int enteringIndex = indexOfRipple(RIPPLE_ENTERING);
+            if (enteringIndex != -1) {
+                fillEnteringRipple(enteringIndex);
             }
             // Ensure a filling or filled ripple.
-            if (mFillingRippleCount == 0 && mFilledRipple == null) {
+            if (!hasRipple(RIPPLE_FILLING) && !hasRipple(RIPPLE_FILLED)) {
                 createFillingRipple();
             }
         }
@@ -291,112 +803,246 @@ public class MaterialEditTextBackgroundDrawable extends BasePaintDrawable {
         invalidateSelf();
     }
 
-    private void removeEnteringRipple() {
-        if (mEnteringRipple != null) {
-            mEnteringRipple.endAnimation();
-            mEnteringRipple = null;
+    private int indexOfRipple(byte state) {
+        for (int i = 0; i < mRippleCount; ++i) {
+            if (mRippleStates[i] == state) {
+                return i;
+            }
         }
+        return -1;
     }
 
-    private void removeFillingRipples() {
-        for (int i = 0; i < mFillingRippleCount; ++i) {
-            mFillingRipples[i].endAnimation();
-            mFillingRipples[i] = null;
+    private boolean hasRipple(byte state) {
+        return indexOfRipple(state) != -1;
+    }
+
+    private void addRipple(LinearRipple ripple, byte state) {
+        if (mRipples == null) {
+            mRipples = new LinearRipple[INITIAL_RIPPLE_CAPACITY];
+            mRippleStates = new byte[INITIAL_RIPPLE_CAPACITY];
+        } else if (mRippleCount == mRipples.length) {
+            // createRipple() keeps us within the budget, and other callers only move ripples.
+            if (mRippleCount == MAX_RIPPLES) {
+                throw new IllegalStateException("addRipple() when there are already "
+                        + MAX_RIPPLES + " ripples");
+            }
+            int capacity = Math.min(2 * mRipples.length, MAX_RIPPLES);
+            LinearRipple[] ripples = new LinearRipple[capacity];
+            System.arraycopy(mRipples, 0, ripples, 0, mRippleCount);
+            mRipples = ripples;
+            byte[] rippleStates = new byte[capacity];
+            System.arraycopy(mRippleStates, 0, rippleStates, 0, mRippleCount);
+            mRippleStates = rippleStates;
         }
-        mFillingRippleCount = 0;
+        mRipples[mRippleCount] = ripple;
+        mRippleStates[mRippleCount] = state;
+        ++mRippleCount;
     }
 
-    private void removeFilledRipple() {
-        mFilledRipple = null;
+    private boolean isActivated() {
+        return mEnabled && (mPressed || mFocused || mError);
     }
 
-    private void removeExitingRipples() {
-        for (int i = 0; i < mExitingRippleCount; ++i) {
-            mExitingRipples[i].endAnimation();
-            mExitingRipples[i] = null;
+    private void updateUnderlineOverlay() {
+        // Mirror the branches for ripples in onStateChanged().
+        if (!isActivated()) {
+            mUnderlineOverlay.exit();
+        } else if (mPressed) {
+            mUnderlineOverlay.enter(consumeUnderlineOverlayPosition());
+        } else {
+            mUnderlineOverlay.fill(consumeUnderlineOverlayPosition());
         }
-        mExitingRippleCount = 0;
+        updateUnderlineOverlayPaint();
     }
 
-    private void updateRipples() {
+    private float consumeUnderlineOverlayPosition() {
+        if (mHasPendingRipple) {
+            mHasPendingRipple = false;
+            return mPendingRipplePosition;
+        } else {
+            return mActivatedRect.width() / 2f;
+        }
+    }
 
-        // Update filled ripple.
-        if (mFilledRipple == null) {
-            if (mEnteringRipple != null && mEnteringRipple.hasFilled()) {
-                mFilledRipple = mEnteringRipple;
+    private void updateUnderlineOverlayPaint() {
+        mUnderlineOverlay.setColorFilter(getColorFilterForDrawing());
+        mUnderlineOverlay.setAlpha(mAlpha);
+    }
+
+    private void removeRippleAt(int index) {
+        int moved = mRippleCount - index - 1;
+        if (moved > 0) {
+            System.arraycopy(mRipples, index + 1, mRipples, index, moved);
+            System.arraycopy(mRippleStates, index + 1, mRippleStates, index, moved);
+        }
+        --mRippleCount;
+        mRipples[mRippleCount] = null;
+    }
+
+    /*
+     * Move ripples in one state to another state, after the ripples already in that state, keeping
+     * their order.
+     */
+    private void moveRipples(byte fromState, byte toState) {
+        int count = mRippleCount;
+        for (int i = 0, visited = 0; visited < count; ++visited) {
+            if (mRippleStates[i] == fromState) {
+                LinearRipple ripple = mRipples[i];
+                removeRippleAt(i);
+                addRipple(ripple, toState);
+            } else {
+                ++i;
             }
         }
-        if (mFilledRipple == null) {
-            for (int i = 0; i < mFillingRippleCount; ++i) {
-                LinearRipple fillingRipple = mFillingRipples[i];
-                if (fillingRipple.hasFilled()) {
-                    mFilledRipple = mFillingRipples[i];
+    }
+
+    private void removeRipples(byte state) {
+        for (int i = 0; i < mRippleCount; ) {
+            if (mRippleStates[i] == state) {
+                // Filled ripples have no animation.
+                if (state != RIPPLE_FILLED) {
+                    mRipples[i].endAnimation();
+                }
+                removeRippleAt(i);
+            } else {
+                ++i;
+            }
+        }
+    }
+
+    /*
+     * Get the index of the ripple that is filled, or has finished entering or filling, or -1 if
+     * none.
+     */
+    private int indexOfFilledRipple() {
+        int filledIndex = indexOfRipple(RIPPLE_FILLED);
+        if (filledIndex == -1) {
+            int enteringIndex = indexOfRipple(RIPPLE_ENTERING);
+            if (enteringIndex != -1 && mRipples[enteringIndex].hasFilled()) {
+                filledIndex = enteringIndex;
+            }
+        }
+        if (filledIndex == -1) {
+            for (int i = 0; i < mRippleCount; ++i) {
+                if (mRippleStates[i] == RIPPLE_FILLING && mRipples[i].hasFilled()) {
+                    filledIndex = i;
                     break;
                 }
             }
         }
+        return filledIndex;
+    }
+
+    private void updateRipples() {
 
-        if (mFilledRipple != null) {
+        // Update filled ripple.
+        int filledIndex = indexOfFilledRipple();
+
+        if (filledIndex != -1) {
 
             // Clear all ripples except for the filled one.
-            removeEnteringRipple();
-            removeFillingRipples();
-            removeExitingRipples();
+            LinearRipple filledRipple = mRipples[filledIndex];
+            for (int i = 0; i < mRippleCount; ++i) {
+                if (mRippleStates[i] != RIPPLE_FILLED) {
+                    mRipples[i].endAnimation();
+                }
+                mRipples[i] = null;
+            }
+            mRippleCount = 0;
+            addRipple(filledRipple, RIPPLE_FILLED);
 
         } else {
 
             // Remove exited ripples.
-            int remaining = 0;
-            for (int i = 0; i < mExitingRippleCount; ++i) {
-                if (!mExitingRipples[i].hasExited()) {
-                    mExitingRipples[remaining++] = mExitingRipples[i];
+            for (int i = 0; i < mRippleCount; ) {
+                if (mRippleStates[i] == RIPPLE_EXITING && mRipples[i].hasExited()) {
+                    removeRippleAt(i);
+                } else {
+                    ++i;
                 }
             }
-            for (int i = remaining; i < mExitingRippleCount; ++i) {
-                mExitingRipples[i] = null;
+        }
+    }
+
+    /*
+     * Merge exiting ripples that are drawn in the same rect into one ripple with exactly the same
+     * appearance, so that rapid input doesn't pile up ripples. This only changes what is drawn, so
+     * it is done upon state changes instead of when drawing.
+     */
+    private void mergeExitingRipples() {
+        float alphaFraction = getRippleAlphaFraction();
+        if (alphaFraction < 0) {
+            // We cannot tell how ripples drawn over each other look.
+            return;
+        }
+        for (int i = 0; i < mRippleCount; ++i) {
+            if (mRippleStates[i] != RIPPLE_EXITING) {
+                continue;
+            }
+            LinearRipple ripple = mRipples[i];
+            for (int j = 0; j < mRippleCount; ) {
+                if (j != i && mRippleStates[j] == RIPPLE_EXITING
+                        && ripple.canMergeWith(mRipples[j], alphaFraction)) {
+                    ripple.mergeWith(mRipples[j]);
+                    removeRippleAt(j);
+                    if (j < i) {
+                        --i;
+                    }
+                } else {
+                    ++j;
+                }
             }
-            mExitingRippleCount = remaining;
         }
     }
 
-    private void exitRipple(LinearRipple ripple) {
-        ripple.exit();
-        mExitingRipples[mExitingRippleCount++] = ripple;
+    /*
+     * Get the fraction of alpha that a ripple of full opacity is drawn with, or -1 if it depends
+     * on a color filter.
+     */
+    private float getRippleAlphaFraction() {
+        float alphaFraction = (float) mAlpha / 0xFF;
+        if (mColorFilter != null) {
+            return -1;
+        } else if (mTintFilter == null) {
+            // Our paint is black.
+            return alphaFraction;
+        } else if (mTintMode == PorterDuff.Mode.SRC_IN) {
+            return alphaFraction * Color.alpha(getTintColor()) / 0xFF;
+        } else {
+            return -1;
+        }
     }
 
     private void exitRipples() {
 
-        if (mEnteringRipple != null) {
-            exitRipple(mEnteringRipple);
-            mEnteringRipple = null;
+        for (int i = 0; i < mRippleCount; ++i) {
+            if (mRippleStates[i] != RIPPLE_EXITING) {
+                mRipples[i].exit();
+            }
         }
 
-        for (int i = 0; i < mFillingRippleCount; ++i) {
-            exitRipple(mFillingRipples[i]);
-            mFillingRipples[i] = null;
-        }
-        mFillingRippleCount = 0;
+        moveRipples(RIPPLE_ENTERING, RIPPLE_EXITING);
+        moveRipples(RIPPLE_FILLING, RIPPLE_EXITING);
+        moveRipples(RIPPLE_FILLED, RIPPLE_EXITING);
 
-        if (mFilledRipple != null) {
-            exitRipple(mFilledRipple);
-            mFilledRipple = null;
-        }
+        mergeExitingRipples();
     }
 
     private LinearRipple createRipple() {
 
-        int rippleCount = 0;
-        if (mEnteringRipple != null) {
-            ++rippleCount;
-        }
-        rippleCount += mFillingRippleCount;
-        if (mFilledRipple != null) {
-            ++rippleCount;
-        }
-        rippleCount += mExitingRippleCount;
-        if (rippleCount >= MAX_RIPPLES) {
-            Log.w(TAG, "Too many ripples alive, skipping ripple creation");
-            return null;
+        // Ripples that were still spreading when they started exiting may have become mergeable.
+        mergeExitingRipples();
+
+        int maxRipples = mQuality == QUALITY_FULL ? MAX_RIPPLES : REDUCED_MAX_RIPPLES;
+        while (mRippleCount >= maxRipples) {
+            // Retire the oldest exiting ripple instead of dropping the feedback for new input.
+            int exitingIndex = indexOfRipple(RIPPLE_EXITING);
+            if (exitingIndex == -1) {
+                Log.w(TAG, "Too many ripples alive, skipping ripple creation");
+                return null;
+            }
+            mRipples[exitingIndex].endAnimation();
+            removeRippleAt(exitingIndex);
         }
 
         float position;
@@ -409,33 +1055,41 @@ public class MaterialEditTextBackgroundDrawable extends BasePaintDrawable {
         return new LinearRipple(this, mActivatedRect, position, mDensity);
     }
 
-    private void createAndEnterRipple() {
-        mEnteringRipple = createRipple();
-        if (mEnteringRipple != null) {
-            mEnteringRipple.enter();
+    /*
+     * Invalidate for a frame of a ripple animation. With reduced quality, redraws are capped at one
+     * per REDUCED_RIPPLE_FRAME_INTERVAL for the whole drawable, however many ripples are animating,
+     * and the frames in between are skipped. The animators themselves still run on every frame.
+     * The final frame of an animation is always drawn.
+     */
+    void invalidateSelfForAnimation(boolean finished) {
+        if (mQuality == QUALITY_REDUCED && !finished) {
+            long time = AnimationUtils.currentAnimationTimeMillis();
+            if (time - mLastAnimationInvalidateTime < REDUCED_RIPPLE_FRAME_INTERVAL) {
+                return;
+            }
+            mLastAnimationInvalidateTime = time;
         }
+        invalidateSelf();
     }
 
-    private void fillRipple(LinearRipple ripple) {
-        ripple.fill();
-        mFillingRipples[mFillingRippleCount++] = ripple;
-    }
-
-    private void fillEnteringRipple() {
-
-        // DEBUG: Remove this.
-        if (mEnteringRipple == null) {
-            throw new IllegalStateException("fillEnteringRipple() when mEnteringRipple is not null");
+    private void createAndEnterRipple() {
+        LinearRipple ripple = createRipple();
+        if (ripple != null) {
+            addRipple(ripple, RIPPLE_ENTERING);
+            ripple.enter();
         }
+    }
 
-        fillRipple(mEnteringRipple);
-        mEnteringRipple = null;
+    private void fillEnteringRipple(int enteringIndex) {
+        mRipples[enteringIndex].fill();
+        moveRipples(RIPPLE_ENTERING, RIPPLE_FILLING);
     }
 
     private void createFillingRipple() {
         LinearRipple ripple = createRipple();
         if (ripple != null) {
-            fillRipple(ripple);
+            addRipple(ripple, RIPPLE_FILLING);
+            ripple.fill();
         }
     }
 
@@ -444,19 +1098,38 @@ public class MaterialEditTextBackgroundDrawable extends BasePaintDrawable {
      */
     @Override
     public void jumpToCurrentState() {
+        if (mTraceListener != null) {
+            mTraceListener.onJumpToCurrentState();
+        }
+        jumpToCurrentStateInternal();
+    }
+
+    private void jumpToCurrentStateInternal() {
+
+        if (mLightweight) {
+            invalidateSelf();
+            return;
+        }
+
+        if (mUnderlineOverlay != null) {
+            mUnderlineOverlay.jumpToCurrentState(isActivated());
+            updateUnderlineOverlayPaint();
+            invalidateSelf();
+            return;
+        }
 
         updateRipples();
 
-        removeEnteringRipple();
-        removeFillingRipples();
-        removeExitingRipples();
+        removeRipples(RIPPLE_ENTERING);
+        removeRipples(RIPPLE_FILLING);
+        removeRipples(RIPPLE_EXITING);
 
-        if (mEnabled && (mPressed || mFocused)) {
-            if (mFilledRipple == null) {
+        if (isActivated()) {
+            if (!hasRipple(RIPPLE_FILLED)) {
                 createFilledRipple();
             }
         } else {
-            removeFilledRipple();
+            removeRipples(RIPPLE_FILLED);
         }
 
         invalidateSelf();
@@ -466,12 +1139,18 @@ public class MaterialEditTextBackgroundDrawable extends BasePaintDrawable {
         LinearRipple ripple = createRipple();
         if (ripple != null) {
             ripple.makeFilled();
-            mFilledRipple = ripple;
+            addRipple(ripple, RIPPLE_FILLED);
         }
     }
 
     /**
      * {@inheritDoc}
+     * <p>
+     * Running animations are ended when this drawable becomes invisible, and no animation is
+     * started until it becomes visible again. An invisible drawable is therefore never referenced
+     * by the animation handler of its thread, and can be garbage collected along with its
+     * callback.
+     * </p>
      */
     @Override
     public boolean setVisible(boolean visible, boolean restart) {
@@ -479,29 +1158,128 @@ public class MaterialEditTextBackgroundDrawable extends BasePaintDrawable {
         updateRipples();
 
         boolean changed = super.setVisible(visible, restart);
+        if (changed && mTraceListener != null) {
+            mTraceListener.onVisibilityChange(visible);
+        }
+        if (changed && mUnderlineOverlay != null) {
+            // Our overlay is outside our view, so it must be hidden along with us.
+            mUnderlineOverlay.setVisible(visible);
+        }
         if (changed && !visible) {
-            jumpToCurrentState();
+            jumpToCurrentStateInternal();
+            releaseRipples();
+            releaseDrawingCaches();
         }
         return changed;
     }
 
+    /*
+     * Drop the ripple arrays if no ripple is left, which will be allocated again on demand.
+     */
+    private void releaseRipples() {
+        if (mRippleCount == 0) {
+            mRipples = null;
+            mRippleStates = null;
+        }
+    }
+
+    private void releaseDrawingCaches() {
+        if (mDefaultRenderNode != null) {
+            mDefaultRenderNode.discard();
+        }
+        if (mDefaultStrip != null) {
+            mDefaultStrip.recycle();
+        }
+        if (mRippleStrip != null) {
+            mRippleStrip.recycle();
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void draw(Canvas canvas) {
+        if (mLightweight) {
+            // Skip our own paint and drawing caches.
+            drawLightweight(canvas);
+        } else {
+            super.draw(canvas);
+        }
+    }
+
+    private void drawLightweight(Canvas canvas) {
+
+        if (sLightweightPaint == null) {
+            sLightweightPaint = new Paint();
+        }
+        Paint paint = sLightweightPaint;
+
+        // Color must be set before alpha, because setColor() also resets alpha.
+        paint.setColor(mHintColor);
+        paint.setAlpha((int) ((mEnabled ? 1 : mDisabledAlpha) * mHintColorAlpha * mAlpha + 0.5f));
+        paint.setColorFilter(null);
+        canvas.drawRect(mDefaultRect, paint);
+
+        if (isActivated()) {
+            paint.setColor(Color.BLACK);
+            paint.setAlpha(mAlpha);
+            paint.setColorFilter(getColorFilterForDrawing());
+            canvas.drawRect(mActivatedRect, paint);
+            // Don't keep a reference to our color filter in the shared paint.
+            paint.setColorFilter(null);
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    protected boolean shouldTranslateToBounds() {
+        // Our rects are computed from our bounds in onBoundsChange().
+        return false;
+    }
+
     @Override
     protected void onDraw(Canvas canvas, int width, int height, Paint paint) {
+        paint.setAntiAlias(isAntiAlias());
         drawDefault(canvas);
-        drawRipples(canvas, paint);
+        if (mUnderlineOverlay != null) {
+            // Our color filter or alpha may have changed without a state change.
+            updateUnderlineOverlayPaint();
+        } else {
+            drawRipples(canvas, paint);
+        }
     }
 
     private void drawDefault(Canvas canvas) {
 
         if (mDefaultPaint == null) {
             mDefaultPaint = new Paint();
-            mDefaultPaint.setAntiAlias(true);
-            mDefaultPaint.setColor(mHintColor);
         }
+        mDefaultPaint.setAntiAlias(isAntiAlias());
+        // Color must be set before alpha, because setColor() also resets alpha.
+        mDefaultPaint.setColor(mHintColor);
         int alpha = (int) ((mEnabled ? 1 : mDisabledAlpha) * mHintColorAlpha * mAlpha + 0.5f);
         mDefaultPaint.setAlpha(alpha);
 
-        canvas.drawRect(mDefaultRect, mDefaultPaint);
+        if (!canvas.isHardwareAccelerated()) {
+            if (mDefaultStrip == null) {
+                mDefaultStrip = new BitmapStrip();
+            }
+            // Alpha is applied when drawing the strip.
+            mDefaultStrip.draw(canvas, mDefaultRect.left, mDefaultRect.top, mDefaultRect.right,
+                    mDefaultRect.bottom, mHintColor | 0xFF000000, null, alpha, isAntiAlias());
+        } else if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.Q) {
+            // The default rect is static while ripples animate, so replay it from a display list
+            // recorded only when it changes.
+            if (mDefaultRenderNode == null) {
+                mDefaultRenderNode = new RectRenderNode(TAG);
+            }
+            mDefaultRenderNode.draw(canvas, mDefaultRect, mDefaultPaint);
+        } else {
+            canvas.drawRect(mDefaultRect, mDefaultPaint);
+        }
     }
 
     @Override
@@ -513,21 +1291,65 @@ public class MaterialEditTextBackgroundDrawable extends BasePaintDrawable {
 
         updateRipples();
 
-        if (mFilledRipple != null) {
-            mFilledRipple.draw(canvas, paint);
+        int filledIndex = indexOfRipple(RIPPLE_FILLED);
+        if (filledIndex != -1) {
+            // A filled ripple has no merged ripples.
+            drawRipple(canvas, paint, mRipples[filledIndex], -1);
         } else {
+            float alphaFraction = getRippleAlphaFraction();
+            drawRipples(canvas, paint, RIPPLE_EXITING, alphaFraction);
+            drawRipples(canvas, paint, RIPPLE_FILLING, alphaFraction);
+            drawRipples(canvas, paint, RIPPLE_ENTERING, alphaFraction);
+        }
+    }
 
-            for (int i = 0; i < mExitingRippleCount; ++i) {
-                mExitingRipples[i].draw(canvas, paint);
+    private void drawRipples(Canvas canvas, Paint paint, byte state, float alphaFraction) {
+        for (int i = 0; i < mRippleCount; ++i) {
+            if (mRippleStates[i] == state) {
+                drawRipple(canvas, paint, mRipples[i], alphaFraction);
             }
+        }
+    }
 
-            for (int i = 0; i < mFillingRippleCount; ++i) {
-                mFillingRipples[i].draw(canvas, paint);
-            }
+    private void drawRipple(Canvas canvas, Paint paint, LinearRipple ripple,
+                            float alphaFraction) {
+
+        boolean software = !canvas.isHardwareAccelerated();
+        if (!software && !mPixelSnappingEnabled) {
+            ripple.draw(canvas, paint, alphaFraction);
+            return;
+        }
+
+        int passCount = ripple.getPassCount(alphaFraction);
+        for (int i = 0; i < passCount; ++i) {
+            drawRipplePass(canvas, paint, ripple, alphaFraction, passCount, i, software);
+        }
+    }
+
+    private void drawRipplePass(Canvas canvas, Paint paint, LinearRipple ripple,
+                                float alphaFraction, int passCount, int pass, boolean software) {
 
-            if (mEnteringRipple != null) {
-                mEnteringRipple.draw(canvas, paint);
+        if (mTempRectF == null) {
+            mTempRectF = new RectF();
+        }
+        int alpha = ripple.getDrawingRect(paint.getAlpha(), alphaFraction, passCount, pass,
+                mTempRectF);
+        if (alpha <= 0) {
+            return;
+        }
+        if (software) {
+            if (mRippleStrip == null) {
+                mRippleStrip = new BitmapStrip();
             }
+            mRippleStrip.draw(canvas, mTempRectF.left, mTempRectF.top, mTempRectF.right,
+                    mTempRectF.bottom, paint.getColor() | 0xFF000000, paint.getColorFilter(),
+                    alpha, paint.isAntiAlias());
+        } else {
+            int origAlpha = paint.getAlpha();
+            paint.setAlpha(alpha);
+            CanvasUtils.drawPixelSnappedRect(canvas, mTempRectF.left, mTempRectF.top,
+                    mTempRectF.right, mTempRectF.bottom, paint);
+            paint.setAlpha(origAlpha);
         }
     }
 }
@@ -6,22 +6,80 @@
 package me.zhanghai.android.materialedittext;
 
 import android.content.Context;
+import android.graphics.PorterDuff;
+import android.graphics.PorterDuffColorFilter;
+import android.os.AsyncTask;
+import android.os.Handler;
+import android.os.Looper;
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+import android.support.annotation.WorkerThread;
 import android.support.design.widget.TextInputLayout;
+import android.text.Editable;
 import android.text.TextUtils;
+import android.text.TextWatcher;
 import android.util.AttributeSet;
 import android.view.View;
 import android.view.ViewGroup;
 import android.widget.EditText;
+import android.widget.LinearLayout;
+import android.widget.TextView;
+
+import java.util.concurrent.Executor;
 
 /**
  * A {@code TextInputLayout} that automatically calls
  * {@link MaterialEditTextBackgroundDrawable#setError(boolean)} in {@link #setError(CharSequence)}
  * if its {@link EditText} is an instance of {@link MaterialEditTextBackgroundDrawable}.
+ * <p>
+ * A {@link Validator} can also be set to validate the text as it changes, off the main thread.
+ * </p>
+ * <p>
+ * Setting the same error again is a no-op. With {@link #setStableErrorEnabled(boolean)}, space is
+ * reserved for a single error line and changing the error doesn't cause a layout pass.
+ * </p>
  */
 public class MaterialTextInputLayout extends TextInputLayout {
 
+    private static final long DEFAULT_VALIDATION_DELAY = 300;
+
+    private static final Handler sMainHandler = new Handler(Looper.getMainLooper());
+
     private MaterialEditTextBackgroundDrawable mEditTextBackground;
 
+    private boolean mStableErrorEnabled;
+    private TextView mStableErrorView;
+    private CharSequence mStableError;
+    private PorterDuffColorFilter mStableErrorColorFilter;
+
+    private Validator mValidator;
+    private Executor mValidationExecutor = AsyncTask.THREAD_POOL_EXECUTOR;
+    private long mValidationDelay = DEFAULT_VALIDATION_DELAY;
+    // Only incremented on the main thread; read by validation tasks to drop stale work.
+    private volatile int mValidationGeneration;
+
+    private final Runnable mStartValidationRunnable = new Runnable() {
+        @Override
+        public void run() {
+            startValidation();
+        }
+    };
+
+    private final TextWatcher mValidationTextWatcher = new TextWatcher() {
+        @Override
+        public void beforeTextChanged(CharSequence s, int start, int count, int after) {}
+
+        @Override
+        public void onTextChanged(CharSequence s, int start, int before, int count) {}
+
+        @Override
+        public void afterTextChanged(Editable s) {
+            if (mValidator != null) {
+                scheduleValidation();
+            }
+        }
+    };
+
     public MaterialTextInputLayout(Context context) {
         super(context);
     }
@@ -43,14 +101,292 @@ public class MaterialTextInputLayout extends TextInputLayout {
             // automatically set.
             mEditTextBackground = (MaterialEditTextBackgroundDrawable) child.getBackground();
         }
+        if (child instanceof EditText) {
+            ((EditText) child).addTextChangedListener(mValidationTextWatcher);
+        }
     }
 
     @Override
     public void setError(CharSequence error) {
+        setError(error, true);
+    }
+
+    /**
+     * Set an error message, like {@link #setError(CharSequence)}.
+     *
+     * @param error The error message, or {@code null} to clear the error.
+     * @param animate Whether to animate the error state of the {@code EditText} background, or to
+     *                make it take effect immediately.
+     */
+    public void setError(CharSequence error, boolean animate) {
+
+        if (mStableErrorEnabled) {
+            setStableError(error, animate);
+            return;
+        }
+
+        // Avoid re-laying out the error area for an unchanged error.
+        if (TextUtils.equals(error, getError())) {
+            return;
+        }
+
         super.setError(error);
 
         if (mEditTextBackground != null) {
-            mEditTextBackground.setError(!TextUtils.isEmpty(error));
+            mEditTextBackground.setError(!TextUtils.isEmpty(error), animate);
+        }
+    }
+
+    @Nullable
+    @Override
+    public CharSequence getError() {
+        return mStableErrorEnabled ? mStableError : super.getError();
+    }
+
+    /**
+     * Get whether errors are presented in a reserved line without layout passes. The default is
+     * {@code false}.
+     *
+     * @return Whether stable error presentation is enabled.
+     *
+     * @see #setStableErrorEnabled(boolean)
+     */
+    public boolean isStableErrorEnabled() {
+        return mStableErrorEnabled;
+    }
+
+    /**
+     * Set whether errors should be presented in a reserved line without layout passes. The default
+     * is {@code false}.
+     * <p>
+     * When enabled, this layout always reserves space for a single line of error text, and setting
+     * an error only swaps the text and the error tint of the {@code EditText} background, instead
+     * of going through {@link TextInputLayout#setError(CharSequence)} which may re-layout the
+     * error area and animate it. Errors longer than one line are ellipsized.
+     * </p>
+     *
+     * @param enabled Whether stable error presentation should be enabled.
+     */
+    public void setStableErrorEnabled(boolean enabled) {
+
+        if (mStableErrorEnabled == enabled) {
+            return;
+        }
+
+        CharSequence error = getError();
+        if (enabled) {
+            super.setError(null);
+            mStableErrorEnabled = true;
+            if (mStableErrorView == null) {
+                createStableErrorView();
+            }
+            addView(mStableErrorView);
+            mStableError = null;
+            setStableError(error, true);
+        } else {
+            setStableError(null, true);
+            removeView(mStableErrorView);
+            mStableErrorEnabled = false;
+            setError(error);
+        }
+    }
+
+    @SuppressWarnings("deprecation")
+    private void createStableErrorView() {
+        mStableErrorView = new TextView(getContext());
+        mStableErrorView.setTextAppearance(getContext(), R.style.TextAppearance_Design_Error);
+        mStableErrorView.setSingleLine();
+        mStableErrorView.setEllipsize(TextUtils.TruncateAt.END);
+        mStableErrorView.setVisibility(INVISIBLE);
+        // A fixed height keeps TextView.setText() from requesting a layout.
+        mStableErrorView.setLayoutParams(new LinearLayout.LayoutParams(
+                ViewGroup.LayoutParams.MATCH_PARENT, mStableErrorView.getLineHeight()
+                + mStableErrorView.getPaddingTop() + mStableErrorView.getPaddingBottom()));
+        mStableErrorColorFilter = new PorterDuffColorFilter(
+                mStableErrorView.getCurrentTextColor(), PorterDuff.Mode.SRC_IN);
+    }
+
+    private void setStableError(CharSequence error, boolean animate) {
+
+        if (TextUtils.equals(error, mStableError)) {
+            return;
+        }
+        mStableError = error;
+
+        boolean hasError = !TextUtils.isEmpty(error);
+        mStableErrorView.setText(error);
+        // Switching between VISIBLE and INVISIBLE doesn't request a layout.
+        mStableErrorView.setVisibility(hasError ? VISIBLE : INVISIBLE);
+
+        updateStableErrorColorFilter();
+        if (mEditTextBackground != null) {
+            mEditTextBackground.setError(hasError, animate);
+        }
+    }
+
+    private void updateStableErrorColorFilter() {
+        EditText editText = getEditText();
+        if (editText != null && editText.getBackground() != null) {
+            // As TextInputLayout does for its error.
+            boolean hasError = !TextUtils.isEmpty(mStableError);
+            editText.getBackground().setColorFilter(hasError ? mStableErrorColorFilter : null);
+        }
+    }
+
+    @Override
+    protected void drawableStateChanged() {
+        super.drawableStateChanged();
+
+        // TextInputLayout clears the color filter of the EditText background when it doesn't know
+        // about an error.
+        if (mStableErrorEnabled) {
+            updateStableErrorColorFilter();
         }
     }
+
+    @Override
+    protected void onDetachedFromWindow() {
+        super.onDetachedFromWindow();
+
+        cancelValidation();
+    }
+
+    /**
+     * Get the validator for the text of this layout.
+     *
+     * @return The validator, or {@code null} if none.
+     */
+    @Nullable
+    public Validator getValidator() {
+        return mValidator;
+    }
+
+    /**
+     * Set the validator for the text of this layout. The text is validated after it changes and
+     * stays unchanged for the validation delay, and the latest result is set with
+     * {@link #setError(CharSequence)}. Setting a validator doesn't validate the current text; call
+     * {@link #validate()} for that.
+     *
+     * @param validator The validator, or {@code null} to stop validating.
+     *
+     * @see #setValidationDelay(long)
+     * @see #setValidationExecutor(Executor)
+     */
+    public void setValidator(@Nullable Validator validator) {
+        cancelValidation();
+        mValidator = validator;
+    }
+
+    /**
+     * Get the executor that validators are run on. The default is
+     * {@link AsyncTask#THREAD_POOL_EXECUTOR}.
+     *
+     * @return The executor that validators are run on.
+     */
+    @NonNull
+    public Executor getValidationExecutor() {
+        return mValidationExecutor;
+    }
+
+    /**
+     * Set the executor that validators are run on. The default is
+     * {@link AsyncTask#THREAD_POOL_EXECUTOR}.
+     *
+     * @param executor The executor that validators should be run on.
+     */
+    public void setValidationExecutor(@NonNull Executor executor) {
+        mValidationExecutor = executor;
+    }
+
+    /**
+     * Get the delay in milliseconds after the last text change before the text is validated. The
+     * default is 300 milliseconds.
+     *
+     * @return The validation delay.
+     */
+    public long getValidationDelay() {
+        return mValidationDelay;
+    }
+
+    /**
+     * Set the delay in milliseconds after the last text change before the text is validated. The
+     * default is 300 milliseconds.
+     *
+     * @param delay The validation delay.
+     */
+    public void setValidationDelay(long delay) {
+        mValidationDelay = delay;
+    }
+
+    /**
+     * Validate the current text now, without waiting for the validation delay. Any pending or
+     * running validation is superseded.
+     */
+    public void validate() {
+        removeCallbacks(mStartValidationRunnable);
+        startValidation();
+    }
+
+    /**
+     * Cancel any pending or running validation, so that its result won't be set.
+     */
+    public void cancelValidation() {
+        removeCallbacks(mStartValidationRunnable);
+        ++mValidationGeneration;
+    }
+
+    private void scheduleValidation() {
+        cancelValidation();
+        postDelayed(mStartValidationRunnable, mValidationDelay);
+    }
+
+    private void startValidation() {
+
+        final Validator validator = mValidator;
+        EditText editText = getEditText();
+        if (validator == null || editText == null) {
+            return;
+        }
+
+        // Take an immutable snapshot of the text for the validator.
+        final String text = editText.getText().toString();
+        final int generation = ++mValidationGeneration;
+        mValidationExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                if (generation != mValidationGeneration) {
+                    return;
+                }
+                final CharSequence error = validator.validate(text);
+                if (generation != mValidationGeneration) {
+                    return;
+                }
+                sMainHandler.post(new Runnable() {
+                    @Override
+                    public void run() {
+                        if (generation == mValidationGeneration) {
+                            setError(error);
+                        }
+                    }
+                });
+            }
+        });
+    }
+
+    /**
+     * A validator for the text of a {@link MaterialTextInputLayout}.
+     */
+    public interface Validator {
+
+        /**
+         * Validate the text. This is called on the validation executor, so it must not touch any
+         * view.
+         *
+         * @param text The text to validate.
+         * @return The error message to set, or {@code null} if the text is valid.
+         */
+        @Nullable
+        @WorkerThread
+        CharSequence validate(@NonNull String text);
+    }
 }
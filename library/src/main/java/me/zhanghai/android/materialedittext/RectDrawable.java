@@ -0,0 +1,25 @@
+/*
+ * Copyright (c) 2016 Zhang Hai <Dreaming.in.Code.ZH@Gmail.com>
+ * All Rights Reserved.
+ */
+
+package me.zhanghai.android.materialedittext;
+
+import android.graphics.Canvas;
+import android.graphics.Paint;
+
+/**
+ * A {@code Drawable} filling its bounds, drawn with the tint or color filter set on it.
+ */
+class RectDrawable extends BasePaintDrawable {
+
+    @Override
+    protected void onPreparePaint(Paint paint) {
+        paint.setStyle(Paint.Style.FILL);
+    }
+
+    @Override
+    protected void onDraw(Canvas canvas, int width, int height, Paint paint) {
+        canvas.drawRect(0, 0, width, height, paint);
+    }
+}
@@ -0,0 +1,69 @@
+/*
+ * Copyright (c) 2016 Zhang Hai <Dreaming.in.Code.ZH@Gmail.com>
+ * All Rights Reserved.
+ */
+
+package me.zhanghai.android.materialedittext;
+
+import android.annotation.TargetApi;
+import android.graphics.Canvas;
+import android.graphics.Paint;
+import android.graphics.RecordingCanvas;
+import android.graphics.Rect;
+import android.graphics.RenderNode;
+import android.os.Build;
+
+/**
+ * A rect recorded once into a {@link RenderNode} and replayed on each draw, so that drawing it
+ * again only records a single display list operation. The node is re-recorded only when the rect
+ * or the paint changes.
+ */
+@TargetApi(Build.VERSION_CODES.Q)
+class RectRenderNode {
+
+    private final RenderNode mRenderNode;
+
+    private final Rect mRect = new Rect();
+    private int mColor;
+    private boolean mAntiAlias;
+    private boolean mRecorded;
+
+    public RectRenderNode(String name) {
+        mRenderNode = new RenderNode(name);
+    }
+
+    public void draw(Canvas canvas, Rect rect, Paint paint) {
+
+        if (!mRecorded || !mRect.equals(rect) || mColor != paint.getColor()
+                || mAntiAlias != paint.isAntiAlias()) {
+            record(rect, paint);
+        }
+
+        canvas.drawRenderNode(mRenderNode);
+    }
+
+    private void record(Rect rect, Paint paint) {
+
+        mRect.set(rect);
+        mColor = paint.getColor();
+        mAntiAlias = paint.isAntiAlias();
+
+        mRenderNode.setPosition(mRect);
+        RecordingCanvas canvas = mRenderNode.beginRecording(mRect.width(), mRect.height());
+        try {
+            // The paint is copied into the display list.
+            canvas.drawRect(0, 0, mRect.width(), mRect.height(), paint);
+        } finally {
+            mRenderNode.endRecording();
+        }
+        mRecorded = true;
+    }
+
+    /**
+     * Release the recorded display list; it will be recorded again on the next draw.
+     */
+    public void discard() {
+        mRenderNode.discardDisplayList();
+        mRecorded = false;
+    }
+}
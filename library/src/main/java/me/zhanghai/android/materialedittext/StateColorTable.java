@@ -0,0 +1,88 @@
+/*
+ * Copyright (c) 2016 Zhang Hai <Dreaming.in.Code.ZH@Gmail.com>
+ * All Rights Reserved.
+ */
+
+package me.zhanghai.android.materialedittext;
+
+import android.content.res.ColorStateList;
+import android.graphics.Color;
+import android.support.annotation.ColorInt;
+import android.support.annotation.NonNull;
+
+/**
+ * A table of colors resolved from a {@link ColorStateList} for every combination of the states we
+ * care about, so that a state change becomes an array lookup instead of a linear scan over the
+ * state specs.
+ */
+final class StateColorTable {
+
+    public static final int STATE_ENABLED = 1;
+    public static final int STATE_PRESSED = 1 << 1;
+    public static final int STATE_FOCUSED = 1 << 2;
+    // Not an attribute state, so it never affects the resolved color; it is part of the mask so
+    // that a mask fully describes the state of our drawables.
+    public static final int STATE_ERROR = 1 << 3;
+
+    public static final int STATE_MASK_COUNT = 1 << 4;
+
+    private static final int[][] STATE_SETS = new int[STATE_MASK_COUNT][];
+    static {
+        for (int stateMask = 0; stateMask < STATE_MASK_COUNT; ++stateMask) {
+            int[] stateSet = new int[Integer.bitCount(stateMask & ~STATE_ERROR)];
+            int i = 0;
+            if ((stateMask & STATE_ENABLED) != 0) {
+                stateSet[i++] = android.R.attr.state_enabled;
+            }
+            if ((stateMask & STATE_PRESSED) != 0) {
+                stateSet[i++] = android.R.attr.state_pressed;
+            }
+            if ((stateMask & STATE_FOCUSED) != 0) {
+                stateSet[i] = android.R.attr.state_focused;
+            }
+            STATE_SETS[stateMask] = stateSet;
+        }
+    }
+
+    private final int[] mColors = new int[STATE_MASK_COUNT];
+
+    public StateColorTable(@NonNull ColorStateList colorList) {
+        for (int stateMask = 0; stateMask < STATE_MASK_COUNT; ++stateMask) {
+            mColors[stateMask] = colorList.getColorForState(STATE_SETS[stateMask],
+                    Color.TRANSPARENT);
+        }
+    }
+
+    @ColorInt
+    public int getColor(int stateMask) {
+        return mColors[stateMask];
+    }
+
+    /**
+     * Get a state set with the attribute states in a state mask.
+     *
+     * @param stateMask The state mask.
+     * @return A new state set.
+     */
+    public static int[] getStateSet(int stateMask) {
+        return STATE_SETS[stateMask].clone();
+    }
+
+    public static int getStateMask(int[] stateSet) {
+        int stateMask = 0;
+        for (int state : stateSet) {
+            switch (state) {
+                case android.R.attr.state_enabled:
+                    stateMask |= STATE_ENABLED;
+                    break;
+                case android.R.attr.state_pressed:
+                    stateMask |= STATE_PRESSED;
+                    break;
+                case android.R.attr.state_focused:
+                    stateMask |= STATE_FOCUSED;
+                    break;
+            }
+        }
+        return stateMask;
+    }
+}
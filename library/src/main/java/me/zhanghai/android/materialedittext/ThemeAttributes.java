@@ -0,0 +1,131 @@
+/*
+ * Copyright (c) 2016 Zhang Hai <Dreaming.in.Code.ZH@Gmail.com>
+ * All Rights Reserved.
+ */
+
+package me.zhanghai.android.materialedittext;
+
+import android.content.Context;
+import android.content.res.ColorStateList;
+import android.content.res.Configuration;
+import android.content.res.Resources;
+import android.util.TypedValue;
+
+import java.util.Arrays;
+import java.util.WeakHashMap;
+
+import me.zhanghai.android.materialedittext.internal.ThemeUtils;
+
+/**
+ * The theme attributes used by {@link MaterialEditTextBackgroundDrawable}, resolved once per theme
+ * and configuration and shared by all drawables created with that theme.
+ * <p>
+ * A theme can be modified in place, e.g. by {@link Resources.Theme#applyStyle(int, boolean)} or
+ * {@code Activity.setTheme()}, so the cached attributes are checked against a fingerprint of the
+ * values that the theme currently resolves for them, which is much cheaper than resolving them
+ * again into color state lists.
+ * </p>
+ */
+final class ThemeAttributes {
+
+    private static final int[] ATTRS = {
+            R.attr.colorControlActivated,
+            android.R.attr.textColorHint,
+            android.R.attr.disabledAlpha
+    };
+
+    // Type, data and resource ID of the resolved value for each attribute.
+    private static final int FINGERPRINT_LENGTH = 3 * ATTRS.length;
+
+    private static final WeakHashMap<Resources.Theme, ThemeAttributes> sCache =
+            new WeakHashMap<>();
+
+    // Guarded by sCache.
+    private static final TypedValue sTempValue = new TypedValue();
+    private static final int[] sTempFingerprint = new int[FINGERPRINT_LENGTH];
+
+    private final Configuration mConfiguration;
+    private final int[] mFingerprint;
+    private final boolean mHasUnresolved;
+
+    private final ColorStateList mColorControlActivatedList;
+    private final StateColorTable mHintColorTable;
+    private final float mDisabledAlpha;
+
+    private ThemeAttributes(Resources.Theme theme, Resources resources, int[] fingerprint) {
+        mConfiguration = new Configuration(resources.getConfiguration());
+        mFingerprint = fingerprint;
+        mHasUnresolved = hasUnresolved(fingerprint);
+        int colorControlActivated = ThemeUtils.getColorFromAttrRes(R.attr.colorControlActivated,
+                theme);
+        mColorControlActivatedList = ColorStateList.valueOf(colorControlActivated);
+        ColorStateList hintColorList = ThemeUtils.getColorStateListFromAttrRes(
+                android.R.attr.textColorHint, theme);
+        mHintColorTable = new StateColorTable(hintColorList);
+        mDisabledAlpha = ThemeUtils.getFloatFromAttrRes(android.R.attr.disabledAlpha, theme);
+    }
+
+    public static ThemeAttributes get(Context context) {
+        return get(context.getTheme(), context.getResources());
+    }
+
+    public static ThemeAttributes get(Resources.Theme theme, Resources resources) {
+        Configuration configuration = resources.getConfiguration();
+        synchronized (sCache) {
+            getFingerprint(theme, sTempFingerprint);
+            ThemeAttributes attributes = sCache.get(theme);
+            // A theme resolves differently after a configuration change, e.g. of night mode, or
+            // after it is modified in place.
+            if (attributes == null || !attributes.mConfiguration.equals(configuration)
+                    || !Arrays.equals(attributes.mFingerprint, sTempFingerprint)) {
+                attributes = new ThemeAttributes(theme, resources, sTempFingerprint.clone());
+                sCache.put(theme, attributes);
+            }
+            return attributes;
+        }
+    }
+
+    private static void getFingerprint(Resources.Theme theme, int[] outFingerprint) {
+        TypedValue value = sTempValue;
+        for (int i = 0, j = 0; i < ATTRS.length; ++i) {
+            if (theme.resolveAttribute(ATTRS[i], value, true)) {
+                outFingerprint[j++] = value.type;
+                outFingerprint[j++] = value.data;
+                outFingerprint[j++] = value.resourceId;
+            } else {
+                outFingerprint[j++] = TypedValue.TYPE_NULL;
+                outFingerprint[j++] = 0;
+                outFingerprint[j++] = 0;
+            }
+        }
+    }
+
+    private static boolean hasUnresolved(int[] fingerprint) {
+        for (int i = 0; i < fingerprint.length; i += 3) {
+            if (fingerprint[i] == TypedValue.TYPE_NULL) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /*
+     * Get whether any attribute is missing from the theme, e.g. colorControlActivated from a
+     * non-AppCompat theme, and has fallen back to a default value.
+     */
+    public boolean hasUnresolved() {
+        return mHasUnresolved;
+    }
+
+    public ColorStateList getColorControlActivatedList() {
+        return mColorControlActivatedList;
+    }
+
+    public StateColorTable getHintColorTable() {
+        return mHintColorTable;
+    }
+
+    public float getDisabledAlpha() {
+        return mDisabledAlpha;
+    }
+}
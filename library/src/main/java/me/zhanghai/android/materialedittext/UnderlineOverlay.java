@@ -0,0 +1,259 @@
+/*
+ * Copyright (c) 2016 Zhang Hai <Dreaming.in.Code.ZH@Gmail.com>
+ * All Rights Reserved.
+ */
+
+package me.zhanghai.android.materialedittext;
+
+import android.annotation.TargetApi;
+import android.content.Context;
+import android.graphics.ColorFilter;
+import android.os.Build;
+import android.view.View;
+import android.view.ViewGroup;
+import android.widget.FrameLayout;
+
+import me.zhanghai.android.materialedittext.internal.ViewCompat;
+
+/**
+ * The activated underline rendered as a view in the overlay of the parent of an {@code EditText},
+ * with the curves of {@link LinearRipple} mapped onto view property animations, so that the
+ * {@code EditText} doesn't need to be redrawn for each frame of the animation.
+ * <p>
+ * A linear ripple at {@code tweenRipple} spans from {@code start * (1 - tweenRipple)} to
+ * {@code start + (width - start) * tweenRipple}, which is exactly a view scaled by
+ * {@code tweenRipple} around a pivot at {@code start}. Its opacity is the alpha of a parent view,
+ * because the two are animated with different timings.
+ * </p>
+ * <p>
+ * The overlay is outside the {@code EditText}, so it mirrors the alpha and transformation of the
+ * {@code EditText} with the properties that are not animated here, and is hidden while the
+ * background of the {@code EditText} is invisible.
+ * </p>
+ */
+@TargetApi(Build.VERSION_CODES.JELLY_BEAN_MR2)
+class UnderlineOverlay {
+
+    private static final int STATE_EXITED = 0;
+    private static final int STATE_ENTERING = 1;
+    private static final int STATE_FILLING = 2;
+    private static final int STATE_EXITING = 3;
+
+    private float mWaveTouchDownAcceleration;
+    private float mWaveTouchUpAcceleration;
+
+    private final FrameLayout mOpacityView;
+    private final View mTweenView;
+    private final RectDrawable mDrawable;
+
+    private ViewGroup mParent;
+
+    private int mState = STATE_EXITED;
+
+    public UnderlineOverlay(Context context, float density) {
+
+        setDensity(density);
+
+        mOpacityView = new FrameLayout(context);
+        mOpacityView.setAlpha(0);
+        mTweenView = new View(context);
+        mDrawable = new RectDrawable();
+        ViewCompat.setBackground(mTweenView, mDrawable);
+        mTweenView.setScaleX(0);
+        mOpacityView.addView(mTweenView, new FrameLayout.LayoutParams(
+                ViewGroup.LayoutParams.MATCH_PARENT, ViewGroup.LayoutParams.MATCH_PARENT));
+    }
+
+    public void setDensity(float density) {
+        mWaveTouchDownAcceleration = LinearRipple.getWaveTouchDownAcceleration(density);
+        mWaveTouchUpAcceleration = LinearRipple.getWaveTouchUpAcceleration(density);
+    }
+
+    public void attach(ViewGroup parent) {
+        if (mParent == parent) {
+            return;
+        }
+        detach();
+        mParent = parent;
+        mParent.getOverlay().add(mOpacityView);
+    }
+
+    public void detach() {
+        if (mParent == null) {
+            return;
+        }
+        jumpToCurrentState(mState == STATE_ENTERING || mState == STATE_FILLING);
+        mParent.getOverlay().remove(mOpacityView);
+        mParent = null;
+    }
+
+    public void layout(int left, int top, int right, int bottom) {
+        int width = right - left;
+        int height = bottom - top;
+        mOpacityView.measure(View.MeasureSpec.makeMeasureSpec(width, View.MeasureSpec.EXACTLY),
+                View.MeasureSpec.makeMeasureSpec(height, View.MeasureSpec.EXACTLY));
+        mOpacityView.layout(left, top, right, bottom);
+    }
+
+    public void setVisible(boolean visible) {
+        mOpacityView.setVisibility(visible ? View.VISIBLE : View.INVISIBLE);
+    }
+
+    /*
+     * Mirror the alpha and transformation of the view whose activated underline we render, which
+     * must have been laid out along with us.
+     */
+    public void mirrorViewProperties(View view) {
+        mTweenView.setAlpha(view.getAlpha());
+        mOpacityView.setTranslationX(view.getTranslationX());
+        mOpacityView.setTranslationY(view.getTranslationY());
+        mOpacityView.setScaleX(view.getScaleX());
+        mOpacityView.setScaleY(view.getScaleY());
+        mOpacityView.setRotation(view.getRotation());
+        mOpacityView.setRotationX(view.getRotationX());
+        mOpacityView.setRotationY(view.getRotationY());
+        float cameraDistance = view.getCameraDistance();
+        if (mOpacityView.getCameraDistance() != cameraDistance) {
+            mOpacityView.setCameraDistance(cameraDistance);
+        }
+        // Transform around the same point as the view.
+        mOpacityView.setPivotX(view.getPivotX() - (mOpacityView.getLeft() - view.getLeft()));
+        mOpacityView.setPivotY(view.getPivotY() - (mOpacityView.getTop() - view.getTop()));
+    }
+
+    public void setColorFilter(ColorFilter colorFilter) {
+        if (mDrawable.getColorFilter() != colorFilter) {
+            mDrawable.setColorFilter(colorFilter);
+        }
+    }
+
+    public void setAlpha(int alpha) {
+        mDrawable.setAlpha(alpha);
+    }
+
+    public boolean isEntering() {
+        return mState == STATE_ENTERING;
+    }
+
+    public boolean isAnimating() {
+        switch (mState) {
+            case STATE_ENTERING:
+            case STATE_FILLING:
+                return mTweenView.getScaleX() != 1 || mOpacityView.getAlpha() != 1;
+            case STATE_EXITING:
+                return mOpacityView.getAlpha() != 0;
+            default:
+                return false;
+        }
+    }
+
+    private boolean hasExited() {
+        return mState == STATE_EXITED || (mState == STATE_EXITING && mOpacityView.getAlpha() == 0);
+    }
+
+    public void moveTo(float position) {
+        mTweenView.setPivotX(position);
+    }
+
+    public void enter(float position) {
+
+        if (mState == STATE_ENTERING || mState == STATE_FILLING) {
+            return;
+        }
+
+        cancelAnimations();
+        if (hasExited()) {
+            start(position);
+        }
+        mState = STATE_ENTERING;
+
+        int duration = LinearRipple.getRippleEnterDuration(getTargetRadius(),
+                mWaveTouchDownAcceleration);
+        mTweenView.animate()
+                .scaleX(1)
+                .setStartDelay(LinearRipple.RIPPLE_ENTER_DELAY)
+                .setDuration(duration)
+                .setInterpolator(LinearRipple.LINEAR_INTERPOLATOR);
+        animateOpacityIn();
+    }
+
+    public void fill(float position) {
+
+        if (mState == STATE_FILLING) {
+            return;
+        }
+
+        cancelAnimations();
+        if (hasExited()) {
+            start(position);
+        }
+        mState = STATE_FILLING;
+
+        animateTweenToFilled();
+        animateOpacityIn();
+    }
+
+    public void exit() {
+
+        if (hasExited() || mState == STATE_EXITING) {
+            return;
+        }
+
+        cancelAnimations();
+        mState = STATE_EXITING;
+
+        float opacity = mOpacityView.getAlpha();
+        mOpacityView.animate()
+                .alpha(0)
+                .setStartDelay(0)
+                .setDuration(LinearRipple.getOpacityExitDuration(opacity))
+                .setInterpolator(LinearRipple.LINEAR_INTERPOLATOR);
+        animateTweenToFilled();
+    }
+
+    public void jumpToCurrentState(boolean activated) {
+        cancelAnimations();
+        mState = activated ? STATE_FILLING : STATE_EXITED;
+        mTweenView.setScaleX(activated ? 1 : 0);
+        mOpacityView.setAlpha(activated ? 1 : 0);
+    }
+
+    private float getTargetRadius() {
+        return mTweenView.getWidth() / 2f;
+    }
+
+    private void start(float position) {
+        mTweenView.setPivotX(position);
+        mTweenView.setScaleX(0);
+        // As LinearRipple, which starts with full opacity.
+        mOpacityView.setAlpha(1);
+    }
+
+    private void animateTweenToFilled() {
+        float tweenRipple = mTweenView.getScaleX();
+        if (tweenRipple == 1) {
+            return;
+        }
+        float targetRadius = getTargetRadius();
+        int duration = LinearRipple.getRippleFillOrExitDuration(targetRadius,
+                tweenRipple * targetRadius, mWaveTouchDownAcceleration, mWaveTouchUpAcceleration);
+        mTweenView.animate()
+                .scaleX(1)
+                .setStartDelay(0)
+                .setDuration(duration)
+                .setInterpolator(LinearRipple.DECELERATE_INTERPOLATOR);
+    }
+
+    private void animateOpacityIn() {
+        mOpacityView.animate()
+                .alpha(1)
+                .setStartDelay(0)
+                .setDuration(LinearRipple.OPACITY_ENTER_DURATION)
+                .setInterpolator(LinearRipple.LINEAR_INTERPOLATOR);
+    }
+
+    private void cancelAnimations() {
+        mTweenView.animate().cancel();
+        mOpacityView.animate().cancel();
+    }
+}
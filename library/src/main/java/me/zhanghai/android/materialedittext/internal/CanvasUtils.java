@@ -0,0 +1,63 @@
+/*
+ * Copyright (c) 2016 Zhang Hai <Dreaming.in.Code.ZH@Gmail.com>
+ * All Rights Reserved.
+ */
+
+package me.zhanghai.android.materialedittext.internal;
+
+import android.graphics.Canvas;
+import android.graphics.Paint;
+
+public class CanvasUtils {
+
+    private CanvasUtils() {}
+
+    /**
+     * Draw a rect without anti-aliasing, with its top and bottom edges snapped to pixel rows, and
+     * its fractional left and right edges drawn as single columns with alpha proportional to their
+     * coverage. For an axis-aligned rect on an untransformed canvas this looks the same as drawing
+     * it with anti-aliasing.
+     *
+     * @param paint The paint to draw with, which should not be anti-aliased. Its alpha is restored
+     *              after drawing.
+     */
+    public static void drawPixelSnappedRect(Canvas canvas, float left, float top, float right,
+                                            float bottom, Paint paint) {
+
+        top = Math.round(top);
+        bottom = Math.round(bottom);
+        if (right <= left || bottom <= top) {
+            return;
+        }
+
+        int origAlpha = paint.getAlpha();
+        int fullLeft = (int) Math.ceil(left);
+        int fullRight = (int) Math.floor(right);
+        if (fullLeft > fullRight) {
+            // Both edges are inside the same column.
+            drawColumn(canvas, fullRight, top, bottom, right - left, origAlpha, paint);
+        } else {
+            if (fullLeft > left) {
+                drawColumn(canvas, fullLeft - 1, top, bottom, fullLeft - left, origAlpha, paint);
+            }
+            if (fullRight > fullLeft) {
+                canvas.drawRect(fullLeft, top, fullRight, bottom, paint);
+            }
+            if (right > fullRight) {
+                drawColumn(canvas, fullRight, top, bottom, right - fullRight, origAlpha, paint);
+            }
+        }
+        paint.setAlpha(origAlpha);
+    }
+
+    private static void drawColumn(Canvas canvas, int x, float top, float bottom, float coverage,
+                                   int alpha, Paint paint) {
+        int columnAlpha = (int) (alpha * coverage + 0.5f);
+        if (columnAlpha <= 0) {
+            return;
+        }
+        paint.setAlpha(columnAlpha);
+        canvas.drawRect(x, top, x + 1, bottom, paint);
+        paint.setAlpha(alpha);
+    }
+}
@@ -7,6 +7,7 @@ package me.zhanghai.android.materialedittext.internal;
 
 import android.content.Context;
 import android.content.res.ColorStateList;
+import android.content.res.Resources;
 import android.content.res.TypedArray;
 
 public class ThemeUtils {
@@ -14,7 +15,11 @@ public class ThemeUtils {
     private ThemeUtils() {}
 
     public static int getColorFromAttrRes(int attr, Context context) {
-        TypedArray a = context.obtainStyledAttributes(new int[] {attr});
+        return getColorFromAttrRes(attr, context.getTheme());
+    }
+
+    public static int getColorFromAttrRes(int attr, Resources.Theme theme) {
+        TypedArray a = theme.obtainStyledAttributes(new int[] {attr});
         try {
             return a.getColor(0, 0);
         } finally {
@@ -23,7 +28,11 @@ public class ThemeUtils {
     }
 
     public static ColorStateList getColorStateListFromAttrRes(int attr, Context context) {
-        TypedArray a = context.obtainStyledAttributes(new int[] {attr});
+        return getColorStateListFromAttrRes(attr, context.getTheme());
+    }
+
+    public static ColorStateList getColorStateListFromAttrRes(int attr, Resources.Theme theme) {
+        TypedArray a = theme.obtainStyledAttributes(new int[] {attr});
         try {
             return a.getColorStateList(0);
         } finally {
@@ -32,7 +41,11 @@ public class ThemeUtils {
     }
 
     public static float getFloatFromAttrRes(int attrRes, Context context) {
-        TypedArray a = context.obtainStyledAttributes(new int[] {attrRes});
+        return getFloatFromAttrRes(attrRes, context.getTheme());
+    }
+
+    public static float getFloatFromAttrRes(int attrRes, Resources.Theme theme) {
+        TypedArray a = theme.obtainStyledAttributes(new int[] {attrRes});
         try {
             return a.getFloat(0, 0);
         } finally {
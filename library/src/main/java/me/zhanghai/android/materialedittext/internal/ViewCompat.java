@@ -5,6 +5,7 @@
 
 package me.zhanghai.android.materialedittext.internal;
 
+import android.animation.ValueAnimator;
 import android.graphics.drawable.Drawable;
 import android.os.Build;
 import android.view.View;
@@ -19,4 +20,12 @@ public class ViewCompat {
             view.setBackgroundDrawable(background);
         }
     }
+
+    public static void postOnAnimation(View view, Runnable action) {
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.JELLY_BEAN) {
+            view.postOnAnimation(action);
+        } else {
+            view.postDelayed(action, ValueAnimator.getFrameDelay());
+        }
+    }
 }
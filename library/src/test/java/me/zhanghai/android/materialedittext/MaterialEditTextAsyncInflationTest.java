@@ -0,0 +1,128 @@
+/*
+ * Copyright (c) 2016 Zhang Hai <Dreaming.in.Code.ZH@Gmail.com>
+ * All Rights Reserved.
+ */
+
+package me.zhanghai.android.materialedittext;
+
+import android.app.Activity;
+import android.os.Looper;
+import android.util.AttributeSet;
+import android.view.ViewGroup;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.Robolectric;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+import org.robolectric.annotation.LooperMode;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.robolectric.Shadows.shadowOf;
+
+/**
+ * Inflates many {@link MaterialEditText}s concurrently on worker threads without a
+ * {@link Looper}, as {@code AsyncLayoutInflater} does, and verifies that their backgrounds work
+ * once they are attached on the main thread.
+ */
+@RunWith(RobolectricTestRunner.class)
+@Config(sdk = 28)
+@LooperMode(LooperMode.Mode.PAUSED)
+public class MaterialEditTextAsyncInflationTest {
+
+    private static final int THREAD_COUNT = 4;
+    private static final int FIELD_COUNT = 200;
+
+    private static final long ANIMATION_TIMEOUT = 5000;
+
+    @Test
+    public void inflateOnWorkerThreads_thenAttach_backgroundsWork() throws Exception {
+
+        final Activity activity = TestUtils.buildActivity().setup().get();
+
+        // Attribute sets are parsers, which cannot be shared between threads, so they are built
+        // up front, as LayoutInflater does for each tag.
+        final List<AttributeSet> attrsList = new ArrayList<>();
+        for (int i = 0; i < FIELD_COUNT; ++i) {
+            attrsList.add(Robolectric.buildAttributeSet()
+                    .addAttribute(android.R.attr.hint, "Field " + i)
+                    .build());
+        }
+
+        ExecutorService executor = Executors.newFixedThreadPool(THREAD_COUNT);
+        final CountDownLatch startLatch = new CountDownLatch(1);
+        List<Future<List<MaterialEditText>>> futures = new ArrayList<>();
+        for (int thread = 0; thread < THREAD_COUNT; ++thread) {
+            final int firstIndex = thread;
+            futures.add(executor.submit(new Callable<List<MaterialEditText>>() {
+                @Override
+                public List<MaterialEditText> call() throws Exception {
+                    assertNull(Looper.myLooper());
+                    // Maximize contention on the shared theme attribute cache.
+                    startLatch.await();
+                    List<MaterialEditText> fields = new ArrayList<>();
+                    for (int i = firstIndex; i < FIELD_COUNT; i += THREAD_COUNT) {
+                        MaterialEditText field = new MaterialEditText(activity,
+                                attrsList.get(i));
+                        // A state change before attach must not start an animator, which would
+                        // throw without a Looper.
+                        field.getBackground().setState(new int[] {
+                                android.R.attr.state_enabled, android.R.attr.state_focused });
+                        fields.add(field);
+                    }
+                    return fields;
+                }
+            }));
+        }
+        startLatch.countDown();
+        List<MaterialEditText> fields = new ArrayList<>();
+        for (Future<List<MaterialEditText>> future : futures) {
+            fields.addAll(future.get(10, TimeUnit.SECONDS));
+        }
+        executor.shutdown();
+        assertEquals(FIELD_COUNT, fields.size());
+
+        ViewGroup contentView = TestUtils.getContentView(activity);
+        for (MaterialEditText field : fields) {
+
+            MaterialEditTextBackgroundDrawable background =
+                    (MaterialEditTextBackgroundDrawable) field.getBackground();
+            assertFalse(background.isVisible());
+            assertFalse(background.isAnimating());
+            assertSame(field, background.getCallback());
+
+            contentView.addView(field);
+            assertTrue(background.isVisible());
+
+            // Reset the state set on the worker thread to the real one.
+            field.refreshDrawableState();
+            field.requestFocus();
+            assertTrue(field.isFocused());
+            assertTrue(background.isAnimating());
+        }
+
+        shadowOf(Looper.getMainLooper()).idleFor(ANIMATION_TIMEOUT, TimeUnit.MILLISECONDS);
+        for (MaterialEditText field : fields) {
+            MaterialEditTextBackgroundDrawable background =
+                    (MaterialEditTextBackgroundDrawable) field.getBackground();
+            assertFalse(background.isAnimating());
+            if (field.isFocused()) {
+                // The last field keeps its filled ripple.
+                assertEquals(1, background.getRippleCount());
+            }
+        }
+    }
+}
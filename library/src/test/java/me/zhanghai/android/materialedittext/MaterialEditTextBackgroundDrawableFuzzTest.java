@@ -0,0 +1,313 @@
+/*
+ * Copyright (c) 2016 Zhang Hai <Dreaming.in.Code.ZH@Gmail.com>
+ * All Rights Reserved.
+ */
+
+package me.zhanghai.android.materialedittext;
+
+import android.app.Activity;
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+import android.graphics.drawable.Drawable;
+import android.os.Looper;
+import android.support.annotation.NonNull;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+import org.robolectric.annotation.LooperMode;
+
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.fail;
+import static org.robolectric.Shadows.shadowOf;
+
+/**
+ * Drives {@link MaterialEditTextBackgroundDrawable} through long random sequences of state, error,
+ * hotspot, bounds, visibility and lightweight changes, draws and clock advances, asserting after
+ * every step that:
+ * <ul>
+ * <li>live ripples stay within the ripple budget of the quality,</li>
+ * <li>no ripple is animating while the drawable is invisible or lightweight,</li>
+ * <li>once no ripple is animating, the main looper has no frame left to run, so no animator
+ * outlives the ripple that started it,</li>
+ * <li>an idle drawable does no work per frame: no invalidation and no scheduled frame.</li>
+ * </ul>
+ * A failure reports the seed and step, so that the sequence can be replayed.
+ */
+@RunWith(RobolectricTestRunner.class)
+@Config(sdk = 28)
+@LooperMode(LooperMode.Mode.PAUSED)
+public class MaterialEditTextBackgroundDrawableFuzzTest {
+
+    private static final int SEED_COUNT = 50;
+    private static final int STEP_COUNT = 500;
+
+    private static final int MAX_WIDTH = 1000;
+    private static final int HEIGHT = 100;
+    private static final long MAX_CLOCK_ADVANCE = 100;
+    // Longer than any ripple animation.
+    private static final long SETTLE_DURATION = 3000;
+    private static final long IDLE_CHECK_DURATION = 500;
+    // A few frames, after which the animation handler has stopped requesting frames if it has no
+    // animator left.
+    private static final long FRAMES_DURATION = 50;
+
+    private static final int ACTION_ENABLED = 0;
+    private static final int ACTION_PRESSED = 1;
+    private static final int ACTION_FOCUSED = 2;
+    private static final int ACTION_ERROR = 3;
+    private static final int ACTION_HOTSPOT = 4;
+    private static final int ACTION_BOUNDS = 5;
+    private static final int ACTION_VISIBILITY = 6;
+    private static final int ACTION_LIGHTWEIGHT = 7;
+    private static final int ACTION_JUMP = 8;
+    private static final int ACTION_DRAW = 9;
+    private static final int ACTION_CLOCK = 10;
+    private static final int ACTION_SETTLE = 11;
+    // Make pressing and clock advances more likely, which is what piles up ripples.
+    private static final int[] ACTIONS = {
+            ACTION_ENABLED, ACTION_PRESSED, ACTION_PRESSED, ACTION_PRESSED, ACTION_FOCUSED,
+            ACTION_ERROR, ACTION_HOTSPOT, ACTION_HOTSPOT, ACTION_BOUNDS, ACTION_VISIBILITY,
+            ACTION_LIGHTWEIGHT, ACTION_JUMP, ACTION_DRAW, ACTION_DRAW, ACTION_CLOCK, ACTION_CLOCK,
+            ACTION_CLOCK, ACTION_CLOCK, ACTION_SETTLE
+    };
+
+    @Test
+    public void randomSequences_fullQuality_keepInvariants() {
+        runRandomSequences(MaterialEditTextBackgroundDrawable.QUALITY_FULL,
+                MaterialEditTextBackgroundDrawable.MAX_RIPPLES);
+    }
+
+    @Test
+    public void randomSequences_reducedQuality_keepInvariants() {
+        runRandomSequences(MaterialEditTextBackgroundDrawable.QUALITY_REDUCED,
+                MaterialEditTextBackgroundDrawable.REDUCED_MAX_RIPPLES);
+    }
+
+    private static void runRandomSequences(int quality, int maxRipples) {
+        Activity activity = TestUtils.buildActivity().setup().get();
+        for (int seed = 0; seed < SEED_COUNT; ++seed) {
+            new Sequence(activity, quality, maxRipples, seed).run();
+        }
+    }
+
+    private static class Sequence {
+
+        private final int mMaxRipples;
+        private final long mSeed;
+        private final Random mRandom;
+
+        private final MaterialEditTextBackgroundDrawable mDrawable;
+        private final CountingCallback mCallback = new CountingCallback();
+        private final Bitmap mBitmap = Bitmap.createBitmap(MAX_WIDTH, HEIGHT,
+                Bitmap.Config.ARGB_8888);
+        private final Canvas mCanvas = new Canvas(mBitmap);
+
+        private boolean mEnabled = true;
+        private boolean mPressed;
+        private boolean mFocused;
+
+        private int mStep;
+        private String mAction;
+
+        public Sequence(Activity activity, int quality, int maxRipples, long seed) {
+            mMaxRipples = maxRipples;
+            mSeed = seed;
+            mRandom = new Random(seed);
+            mDrawable = new MaterialEditTextBackgroundDrawable(activity);
+            mDrawable.setQuality(activity, quality);
+            mDrawable.setCallback(mCallback);
+            mDrawable.setBounds(0, 0, MAX_WIDTH, HEIGHT);
+            updateState();
+        }
+
+        public void run() {
+            for (mStep = 0; mStep < STEP_COUNT; ++mStep) {
+                doRandomAction();
+                checkInvariants();
+            }
+            mAction = "final settle";
+            settle();
+            mBitmap.recycle();
+        }
+
+        private void doRandomAction() {
+            int action = ACTIONS[mRandom.nextInt(ACTIONS.length)];
+            switch (action) {
+                case ACTION_ENABLED:
+                    mEnabled = !mEnabled;
+                    mAction = "enabled = " + mEnabled;
+                    updateState();
+                    break;
+                case ACTION_PRESSED:
+                    mPressed = !mPressed;
+                    mAction = "pressed = " + mPressed;
+                    updateState();
+                    break;
+                case ACTION_FOCUSED:
+                    mFocused = !mFocused;
+                    mAction = "focused = " + mFocused;
+                    updateState();
+                    break;
+                case ACTION_ERROR: {
+                    boolean error = !mDrawable.hasError();
+                    boolean animate = mRandom.nextBoolean();
+                    mAction = "error = " + error + ", animate = " + animate;
+                    mDrawable.setError(error, animate);
+                    break;
+                }
+                case ACTION_HOTSPOT: {
+                    float x = mRandom.nextFloat() * MAX_WIDTH;
+                    float y = mRandom.nextFloat() * HEIGHT;
+                    mAction = "hotspot = (" + x + ", " + y + ")";
+                    mDrawable.setHotspot(x, y);
+                    break;
+                }
+                case ACTION_BOUNDS: {
+                    int width = 1 + mRandom.nextInt(MAX_WIDTH);
+                    mAction = "width = " + width;
+                    mDrawable.setBounds(0, 0, width, HEIGHT);
+                    break;
+                }
+                case ACTION_VISIBILITY: {
+                    boolean visible = !mDrawable.isVisible();
+                    mAction = "visible = " + visible;
+                    mDrawable.setVisible(visible, false);
+                    break;
+                }
+                case ACTION_LIGHTWEIGHT: {
+                    boolean lightweight = !mDrawable.isLightweight();
+                    mAction = "lightweight = " + lightweight;
+                    mDrawable.setLightweight(lightweight);
+                    break;
+                }
+                case ACTION_JUMP:
+                    mAction = "jumpToCurrentState()";
+                    mDrawable.jumpToCurrentState();
+                    break;
+                case ACTION_DRAW:
+                    mAction = "draw()";
+                    mDrawable.draw(mCanvas);
+                    break;
+                case ACTION_CLOCK: {
+                    long duration = mRandom.nextInt((int) MAX_CLOCK_ADVANCE + 1);
+                    mAction = "advance clock by " + duration + " ms";
+                    advanceClock(duration);
+                    break;
+                }
+                case ACTION_SETTLE:
+                    mAction = "settle";
+                    settle();
+                    break;
+                default:
+                    throw new AssertionError(action);
+            }
+        }
+
+        private void updateState() {
+            int[] stateSet = new int[3];
+            int length = 0;
+            if (mEnabled) {
+                stateSet[length++] = android.R.attr.state_enabled;
+            }
+            if (mPressed) {
+                stateSet[length++] = android.R.attr.state_pressed;
+            }
+            if (mFocused) {
+                stateSet[length++] = android.R.attr.state_focused;
+            }
+            mDrawable.setState(Arrays.copyOf(stateSet, length));
+        }
+
+        private void checkInvariants() {
+
+            int rippleCount = mDrawable.getRippleCount();
+            check("live ripples " + rippleCount + " > " + mMaxRipples, rippleCount <= mMaxRipples);
+
+            int animatingRippleCount = mDrawable.getAnimatingRippleCount();
+            if (!mDrawable.isVisible() || mDrawable.isLightweight()) {
+                check("animating ripples " + animatingRippleCount
+                        + " while invisible or lightweight", animatingRippleCount == 0);
+                check("animating while invisible or lightweight", !mDrawable.isAnimating());
+            }
+
+            if (animatingRippleCount == 0) {
+                // Any animator still running would request another frame.
+                advanceClock(FRAMES_DURATION);
+                check("frame scheduled while no ripple is animating", !hasScheduledTask());
+            }
+        }
+
+        /*
+         * Let all animations run out, and check that the drawable then does no work per frame.
+         */
+        private void settle() {
+
+            advanceClock(SETTLE_DURATION);
+            // Exited ripples are only dropped lazily, but aren't counted without a draw either.
+            check("animating after settling", !mDrawable.isAnimating());
+            // An invisible drawable still keeps the filled ripple for its state.
+            int expectedRippleCount = !mDrawable.isLightweight() && isActivated() ? 1 : 0;
+            check("live ripples " + mDrawable.getRippleCount() + " after settling, expected "
+                    + expectedRippleCount, mDrawable.getRippleCount() == expectedRippleCount);
+
+            mCallback.reset();
+            advanceClock(IDLE_CHECK_DURATION);
+            check("invalidated " + mCallback.getInvalidationCount() + " times while idle",
+                    mCallback.getInvalidationCount() == 0);
+            check("frame scheduled while idle", !hasScheduledTask());
+        }
+
+        private boolean isActivated() {
+            return mEnabled && (mPressed || mFocused || mDrawable.hasError());
+        }
+
+        private void check(String message, boolean condition) {
+            if (!condition) {
+                fail("Seed " + mSeed + ", step " + mStep + " (" + mAction + "): " + message);
+            }
+        }
+    }
+
+    private static void advanceClock(long duration) {
+        shadowOf(Looper.getMainLooper()).idleFor(duration, TimeUnit.MILLISECONDS);
+    }
+
+    /*
+     * Get whether the main looper has any task scheduled. The drawable isn't attached to a view,
+     * so a scheduled task can only be a frame requested by the animation handler of the main
+     * thread, which it does on every frame as long as any animator is running.
+     */
+    private static boolean hasScheduledTask() {
+        return !shadowOf(Looper.getMainLooper()).getNextScheduledTaskTime().equals(Duration.ZERO);
+    }
+
+    private static class CountingCallback implements Drawable.Callback {
+
+        private int mInvalidationCount;
+
+        public int getInvalidationCount() {
+            return mInvalidationCount;
+        }
+
+        public void reset() {
+            mInvalidationCount = 0;
+        }
+
+        @Override
+        public void invalidateDrawable(@NonNull Drawable who) {
+            ++mInvalidationCount;
+        }
+
+        @Override
+        public void scheduleDrawable(@NonNull Drawable who, @NonNull Runnable what, long when) {}
+
+        @Override
+        public void unscheduleDrawable(@NonNull Drawable who, @NonNull Runnable what) {}
+    }
+}
@@ -0,0 +1,75 @@
+/*
+ * Copyright (c) 2016 Zhang Hai <Dreaming.in.Code.ZH@Gmail.com>
+ * All Rights Reserved.
+ */
+
+package me.zhanghai.android.materialedittext;
+
+import android.app.Activity;
+import android.graphics.Color;
+import android.view.ContextThemeWrapper;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertTrue;
+
+@RunWith(RobolectricTestRunner.class)
+@Config(sdk = 28)
+public class MaterialEditTextBackgroundDrawableTest {
+
+    @Test
+    public void onConfigurationChanged_keepsTintSetByApp() {
+        Activity activity = TestUtils.buildActivity().setup().get();
+        MaterialEditTextBackgroundDrawable drawable = new MaterialEditTextBackgroundDrawable(
+                activity);
+        drawable.setTint(Color.RED);
+
+        drawable.onConfigurationChanged(activity);
+        drawable.applyTheme(activity.getTheme());
+
+        assertEquals(Color.RED, drawable.getTintColor());
+    }
+
+    @Test
+    public void applyTheme_updatesThemeTint() {
+        Activity activity = TestUtils.buildActivity().setup().get();
+        MaterialEditTextBackgroundDrawable drawable = new MaterialEditTextBackgroundDrawable(
+                activity);
+        int lightTintColor = drawable.getTintColor();
+
+        activity.getTheme().applyStyle(R.style.Theme_AppCompat, true);
+        drawable.applyTheme(activity.getTheme());
+
+        assertEquals(ThemeAttributes.get(activity).getColorControlActivatedList()
+                .getDefaultColor(), drawable.getTintColor());
+        assertNotEquals(lightTintColor, drawable.getTintColor());
+    }
+
+    @Test
+    public void canApplyTheme_isFalseWhenResolvedFromTheme() {
+        Activity activity = TestUtils.buildActivity().setup().get();
+        MaterialEditTextBackgroundDrawable drawable = new MaterialEditTextBackgroundDrawable(
+                activity);
+
+        assertFalse(drawable.canApplyTheme());
+    }
+
+    @Test
+    public void canApplyTheme_isTrueUntilMissingAttributesAreResolved() {
+        Activity activity = TestUtils.buildActivity().setup().get();
+        // A framework theme has no colorControlActivated of AppCompat.
+        MaterialEditTextBackgroundDrawable drawable = new MaterialEditTextBackgroundDrawable(
+                new ContextThemeWrapper(activity, android.R.style.Theme_DeviceDefault_Light));
+        assertTrue(drawable.canApplyTheme());
+
+        drawable.applyTheme(activity.getTheme());
+
+        assertFalse(drawable.canApplyTheme());
+    }
+}
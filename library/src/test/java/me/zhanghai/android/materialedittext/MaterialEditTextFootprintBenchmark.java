@@ -0,0 +1,165 @@
+/*
+ * Copyright (c) 2016 Zhang Hai <Dreaming.in.Code.ZH@Gmail.com>
+ * All Rights Reserved.
+ */
+
+package me.zhanghai.android.materialedittext;
+
+import android.app.Activity;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.openjdk.jol.info.GraphLayout;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Measures the heap retained by each {@link MaterialEditTextBackgroundDrawable} and
+ * {@link MaterialEditText} with JOL, broken down by class, and writes the result to
+ * {@code build/reports/footprint/footprint.json} so that it can be compared between releases.
+ * <p>
+ * Many instances are created with the same theme, and the objects reachable from the first one
+ * are subtracted from the objects reachable from all of them, which leaves exactly the objects
+ * that each instance retains for itself and not what is shared, e.g. the context, the theme
+ * attributes and the cached color filters.
+ * </p>
+ */
+@RunWith(RobolectricTestRunner.class)
+@Config(sdk = 28)
+public class MaterialEditTextFootprintBenchmark {
+
+    private static final int DRAWABLE_COUNT = 1000;
+    private static final int FIELD_COUNT = 200;
+
+    private static final File REPORT_FILE = new File("build/reports/footprint/footprint.json");
+
+    private static JSONArray sScenarios;
+
+    @BeforeClass
+    public static void setUpReport() {
+        sScenarios = new JSONArray();
+    }
+
+    @AfterClass
+    public static void writeReport() throws IOException, JSONException {
+        JSONObject report = new JSONObject();
+        report.put("version", BuildConfig.VERSION_NAME);
+        report.put("scenarios", sScenarios);
+        File directory = REPORT_FILE.getParentFile();
+        if (!directory.isDirectory() && !directory.mkdirs()) {
+            throw new IOException("Cannot create " + directory);
+        }
+        try (Writer writer = new OutputStreamWriter(new FileOutputStream(REPORT_FILE),
+                StandardCharsets.UTF_8)) {
+            writer.write(report.toString(2));
+        }
+    }
+
+    @Test
+    public void drawable() throws JSONException {
+        Activity activity = TestUtils.buildActivity().setup().get();
+        Object[] drawables = new Object[DRAWABLE_COUNT];
+        for (int i = 0; i < drawables.length; ++i) {
+            MaterialEditTextBackgroundDrawable drawable = new MaterialEditTextBackgroundDrawable(
+                    activity);
+            drawable.setBounds(0, 0, 500, 100);
+            drawables[i] = drawable;
+        }
+        measure("drawable", drawables);
+    }
+
+    @Test
+    public void drawable_activated() throws JSONException {
+        Activity activity = TestUtils.buildActivity().setup().get();
+        Object[] drawables = new Object[DRAWABLE_COUNT];
+        for (int i = 0; i < drawables.length; ++i) {
+            MaterialEditTextBackgroundDrawable drawable = new MaterialEditTextBackgroundDrawable(
+                    activity);
+            drawable.setBounds(0, 0, 500, 100);
+            drawable.setState(new int[] { android.R.attr.state_enabled,
+                    android.R.attr.state_focused });
+            // Keep the filled ripple without its animator.
+            drawable.jumpToCurrentState();
+            drawables[i] = drawable;
+        }
+        measure("drawable_activated", drawables);
+    }
+
+    @Test
+    public void drawable_withConstantState() throws JSONException {
+        Activity activity = TestUtils.buildActivity().setup().get();
+        Object[] drawables = new Object[DRAWABLE_COUNT];
+        for (int i = 0; i < drawables.length; ++i) {
+            MaterialEditTextBackgroundDrawable drawable = new MaterialEditTextBackgroundDrawable(
+                    activity);
+            drawable.setBounds(0, 0, 500, 100);
+            // As TextInputLayout does.
+            drawable.getConstantState();
+            drawables[i] = drawable;
+        }
+        measure("drawable_withConstantState", drawables);
+    }
+
+    @Test
+    public void field() throws JSONException {
+        Activity activity = TestUtils.buildActivity().setup().get();
+        Object[] fields = new Object[FIELD_COUNT];
+        for (int i = 0; i < fields.length; ++i) {
+            fields[i] = new MaterialEditText(activity);
+        }
+        measure("field", fields);
+    }
+
+    private static void measure(String name, Object[] instances) throws JSONException {
+
+        // Multiple roots, without the array holding them.
+        final GraphLayout layout = GraphLayout.parseInstance(instances).subtract(
+                GraphLayout.parseInstance(instances[0]));
+        int count = instances.length - 1;
+
+        List<Class<?>> classes = new ArrayList<>(layout.getClasses());
+        // Largest first.
+        Collections.sort(classes, new Comparator<Class<?>>() {
+            @Override
+            public int compare(Class<?> class1, Class<?> class2) {
+                return Long.compare(layout.getClassSizes(class2), layout.getClassSizes(class1));
+            }
+        });
+        JSONArray classesJson = new JSONArray();
+        for (Class<?> clazz : classes) {
+            JSONObject classJson = new JSONObject();
+            classJson.put("class", clazz.getName());
+            classJson.put("objectsPerInstance", (double) layout.getClassCounts(clazz) / count);
+            classJson.put("bytesPerInstance", (double) layout.getClassSizes(clazz) / count);
+            classesJson.put(classJson);
+        }
+
+        JSONObject scenario = new JSONObject();
+        scenario.put("name", name);
+        scenario.put("instances", count);
+        scenario.put("objectsPerInstance", (double) layout.totalCount() / count);
+        scenario.put("bytesPerInstance", (double) layout.totalSize() / count);
+        scenario.put("classes", classesJson);
+        sScenarios.put(scenario);
+
+        assertTrue(name + " retains nothing per instance", layout.totalSize() > 0);
+    }
+}
@@ -0,0 +1,144 @@
+/*
+ * Copyright (c) 2016 Zhang Hai <Dreaming.in.Code.ZH@Gmail.com>
+ * All Rights Reserved.
+ */
+
+package me.zhanghai.android.materialedittext;
+
+import android.app.Activity;
+import android.graphics.drawable.Drawable;
+import android.os.Looper;
+import android.view.View;
+import android.view.ViewGroup;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.android.controller.ActivityController;
+import org.robolectric.annotation.Config;
+import org.robolectric.annotation.LooperMode;
+
+import java.lang.ref.WeakReference;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.robolectric.Shadows.shadowOf;
+
+/**
+ * Detaches a {@link MaterialEditText} or destroys its activity while its ripple is still exiting,
+ * and asserts via weak references and forced garbage collection that nothing is retained by the
+ * animation handler, including the view property animators of an underline overlay.
+ * <p>
+ * The main looper is never run after the detach, so any animator still registered with the
+ * animation handler would keep its target reachable.
+ * </p>
+ */
+@RunWith(RobolectricTestRunner.class)
+@Config(sdk = 28)
+@LooperMode(LooperMode.Mode.PAUSED)
+public class MaterialEditTextLeakTest {
+
+    private static final long FILL_DURATION = 1000;
+    // Long enough for the exit animations to start, and far shorter than them.
+    private static final long EXIT_START_DURATION = 50;
+
+    private static final int GC_ATTEMPTS = 20;
+
+    @Test
+    public void detach_whileRippleExiting_releasesFieldAndBackground() {
+        Activity activity = TestUtils.buildActivity().setup().get();
+        assertCollected(detachWhileExiting(activity, false));
+    }
+
+    @Test
+    public void detach_whileUnderlineOverlayExiting_releasesFieldAndBackground() {
+        Activity activity = TestUtils.buildActivity().setup().get();
+        assertCollected(detachWhileExiting(activity, true));
+    }
+
+    @Test
+    public void destroy_whileRippleExiting_releasesActivity() {
+        assertCollected(destroyWhileExiting(false));
+    }
+
+    @Test
+    public void destroy_whileUnderlineOverlayExiting_releasesActivity() {
+        assertCollected(destroyWhileExiting(true));
+    }
+
+    /*
+     * Kept out of the test methods, so that no local variable keeps the objects reachable.
+     */
+    private static Map<String, WeakReference<?>> detachWhileExiting(Activity activity,
+                                                                   boolean underlineOverlay) {
+        MaterialEditText field = addExitingField(activity, underlineOverlay);
+        Map<String, WeakReference<?>> references = new LinkedHashMap<>();
+        references.put("field", new WeakReference<>(field));
+        references.put("background", new WeakReference<>(field.getBackground()));
+        TestUtils.getContentView(activity).removeView(field);
+        return references;
+    }
+
+    private static Map<String, WeakReference<?>> destroyWhileExiting(boolean underlineOverlay) {
+        ActivityController<Activity> controller = TestUtils.buildActivity().setup();
+        Activity activity = controller.get();
+        MaterialEditText field = addExitingField(activity, underlineOverlay);
+        Map<String, WeakReference<?>> references = new LinkedHashMap<>();
+        references.put("activity", new WeakReference<>(activity));
+        references.put("field", new WeakReference<>(field));
+        references.put("background", new WeakReference<>(field.getBackground()));
+        controller.pause().stop().destroy();
+        View decorView = activity.getWindow().getDecorView();
+        if (decorView.isAttachedToWindow()) {
+            activity.getWindowManager().removeViewImmediate(decorView);
+        }
+        return references;
+    }
+
+    private static MaterialEditText addExitingField(Activity activity, boolean underlineOverlay) {
+
+        ViewGroup contentView = TestUtils.getContentView(activity);
+        MaterialEditText field = new MaterialEditText(activity);
+        field.setUnderlineOverlayEnabled(underlineOverlay);
+        contentView.addView(field);
+        // Something else to move the focus to.
+        View otherView = new View(activity);
+        otherView.setFocusable(true);
+        contentView.addView(otherView);
+
+        field.requestFocus();
+        idleMainLooper(FILL_DURATION);
+        otherView.requestFocus();
+        idleMainLooper(EXIT_START_DURATION);
+
+        Drawable background = field.getBackground();
+        assertTrue(((MaterialEditTextBackgroundDrawable) background).isAnimating());
+        return field;
+    }
+
+    private static void idleMainLooper(long duration) {
+        shadowOf(Looper.getMainLooper()).idleFor(duration, TimeUnit.MILLISECONDS);
+    }
+
+    private static void assertCollected(Map<String, WeakReference<?>> references) {
+        for (int i = 0; i < GC_ATTEMPTS && !allCleared(references); ++i) {
+            System.gc();
+            System.runFinalization();
+        }
+        for (Map.Entry<String, WeakReference<?>> entry : references.entrySet()) {
+            assertNull(entry.getKey() + " is retained", entry.getValue().get());
+        }
+    }
+
+    private static boolean allCleared(Map<String, WeakReference<?>> references) {
+        for (WeakReference<?> reference : references.values()) {
+            if (reference.get() != null) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
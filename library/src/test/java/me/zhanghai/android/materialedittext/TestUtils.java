@@ -0,0 +1,30 @@
+/*
+ * Copyright (c) 2016 Zhang Hai <Dreaming.in.Code.ZH@Gmail.com>
+ * All Rights Reserved.
+ */
+
+package me.zhanghai.android.materialedittext;
+
+import android.app.Activity;
+import android.view.ViewGroup;
+
+import org.robolectric.Robolectric;
+import org.robolectric.android.controller.ActivityController;
+
+class TestUtils {
+
+    private TestUtils() {}
+
+    /*
+     * Build an activity with an AppCompat theme, which our theme attributes are resolved from.
+     */
+    public static ActivityController<Activity> buildActivity() {
+        ActivityController<Activity> controller = Robolectric.buildActivity(Activity.class);
+        controller.get().setTheme(R.style.Theme_AppCompat_Light);
+        return controller;
+    }
+
+    public static ViewGroup getContentView(Activity activity) {
+        return (ViewGroup) activity.findViewById(android.R.id.content);
+    }
+}
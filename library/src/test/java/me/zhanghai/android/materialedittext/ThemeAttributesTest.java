@@ -0,0 +1,49 @@
+/*
+ * Copyright (c) 2016 Zhang Hai <Dreaming.in.Code.ZH@Gmail.com>
+ * All Rights Reserved.
+ */
+
+package me.zhanghai.android.materialedittext;
+
+import android.content.Context;
+import android.content.res.Resources;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+import org.robolectric.annotation.Config;
+
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+
+@RunWith(RobolectricTestRunner.class)
+@Config(sdk = 28)
+public class ThemeAttributesTest {
+
+    @Test
+    public void get_sameTheme_isCached() {
+        Context context = RuntimeEnvironment.application;
+        Resources.Theme theme = context.getResources().newTheme();
+        theme.applyStyle(R.style.Theme_AppCompat_Light, true);
+        Resources resources = context.getResources();
+        assertSame(ThemeAttributes.get(theme, resources), ThemeAttributes.get(theme, resources));
+    }
+
+    @Test
+    public void get_afterApplyStyle_isResolvedAgain() {
+        Context context = RuntimeEnvironment.application;
+        Resources.Theme theme = context.getResources().newTheme();
+        theme.applyStyle(R.style.Theme_AppCompat_Light, true);
+        Resources resources = context.getResources();
+        ThemeAttributes lightAttributes = ThemeAttributes.get(theme, resources);
+
+        theme.applyStyle(R.style.Theme_AppCompat, true);
+        ThemeAttributes darkAttributes = ThemeAttributes.get(theme, resources);
+
+        assertNotSame(lightAttributes, darkAttributes);
+        assertNotEquals(lightAttributes.getColorControlActivatedList().getDefaultColor(),
+                darkAttributes.getColorControlActivatedList().getDefaultColor());
+    }
+}
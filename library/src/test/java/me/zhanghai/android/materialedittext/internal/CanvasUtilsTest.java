@@ -0,0 +1,112 @@
+/*
+ * Copyright (c) 2016 Zhang Hai <Dreaming.in.Code.ZH@Gmail.com>
+ * All Rights Reserved.
+ */
+
+package me.zhanghai.android.materialedittext.internal;
+
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+import android.graphics.Color;
+import android.graphics.Paint;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+import org.robolectric.annotation.GraphicsMode;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+/**
+ * Compares {@link CanvasUtils#drawPixelSnappedRect} against drawing the same rect with
+ * anti-aliasing, pixel by pixel with the native Skia backend.
+ */
+@RunWith(RobolectricTestRunner.class)
+@Config(sdk = 28)
+@GraphicsMode(GraphicsMode.Mode.NATIVE)
+public class CanvasUtilsTest {
+
+    private static final int WIDTH = 16;
+    private static final int HEIGHT = 4;
+
+    // Skia quantizes the coverage of anti-aliased edges, and we round alpha ourselves.
+    private static final int CHANNEL_TOLERANCE = 3;
+
+    private static final float[][] RECTS = {
+            // Integer edges.
+            { 2, 1, 10, 3 },
+            // Fractional left and right edges.
+            { 2.25f, 1, 9.75f, 3 },
+            { 0.5f, 0, 15.5f, 4 },
+            { 3.9f, 1, 4.1f, 3 },
+            // Both edges inside the same column.
+            { 5.2f, 1, 5.7f, 3 },
+            // Empty.
+            { 6.5f, 1, 6.5f, 3 },
+            // A single row, as the default underline at mdpi.
+            { 1.3f, 1, 12.6f, 2 },
+    };
+
+    private static final int[] COLORS = { Color.BLACK, 0xFF3F51B5, 0x80FF4081 };
+
+    private static final int[] BACKGROUND_COLORS = { Color.TRANSPARENT, Color.WHITE, 0xFF212121 };
+
+    @Test
+    public void drawPixelSnappedRect_matchesAntiAliasedRect() {
+        for (float[] rect : RECTS) {
+            for (int color : COLORS) {
+                for (int backgroundColor : BACKGROUND_COLORS) {
+                    assertMatchesAntiAliasedRect(rect, color, backgroundColor);
+                }
+            }
+        }
+    }
+
+    @Test
+    public void drawPixelSnappedRect_restoresPaintAlpha() {
+        Bitmap bitmap = Bitmap.createBitmap(WIDTH, HEIGHT, Bitmap.Config.ARGB_8888);
+        Paint paint = new Paint();
+        paint.setColor(0x80FF4081);
+        CanvasUtils.drawPixelSnappedRect(new Canvas(bitmap), 2.25f, 1, 9.75f, 3, paint);
+        assertEquals(0x80, paint.getAlpha());
+    }
+
+    private static void assertMatchesAntiAliasedRect(float[] rect, int color,
+                                                     int backgroundColor) {
+
+        Bitmap expected = Bitmap.createBitmap(WIDTH, HEIGHT, Bitmap.Config.ARGB_8888);
+        expected.eraseColor(backgroundColor);
+        Paint antiAliasedPaint = new Paint(Paint.ANTI_ALIAS_FLAG);
+        antiAliasedPaint.setColor(color);
+        new Canvas(expected).drawRect(rect[0], rect[1], rect[2], rect[3], antiAliasedPaint);
+
+        Bitmap actual = Bitmap.createBitmap(WIDTH, HEIGHT, Bitmap.Config.ARGB_8888);
+        actual.eraseColor(backgroundColor);
+        Paint paint = new Paint();
+        paint.setColor(color);
+        CanvasUtils.drawPixelSnappedRect(new Canvas(actual), rect[0], rect[1], rect[2], rect[3],
+                paint);
+
+        for (int y = 0; y < HEIGHT; ++y) {
+            for (int x = 0; x < WIDTH; ++x) {
+                int expectedPixel = expected.getPixel(x, y);
+                int actualPixel = actual.getPixel(x, y);
+                if (!pixelsMatch(expectedPixel, actualPixel)) {
+                    fail(String.format("Pixel (%d, %d) of rect [%s, %s, %s, %s] in #%08X over"
+                                    + " #%08X: expected #%08X, got #%08X", x, y, rect[0], rect[1],
+                            rect[2], rect[3], color, backgroundColor, expectedPixel,
+                            actualPixel));
+                }
+            }
+        }
+    }
+
+    private static boolean pixelsMatch(int pixel1, int pixel2) {
+        return Math.abs(Color.alpha(pixel1) - Color.alpha(pixel2)) <= CHANNEL_TOLERANCE
+                && Math.abs(Color.red(pixel1) - Color.red(pixel2)) <= CHANNEL_TOLERANCE
+                && Math.abs(Color.green(pixel1) - Color.green(pixel2)) <= CHANNEL_TOLERANCE
+                && Math.abs(Color.blue(pixel1) - Color.blue(pixel2)) <= CHANNEL_TOLERANCE;
+    }
+}
@@ -0,0 +1,488 @@
+/*
+ * Copyright (c) 2016 Zhang Hai <Dreaming.in.Code.ZH@Gmail.com>
+ * All Rights Reserved.
+ */
+
+package me.zhanghai.android.materialedittext;
+
+import android.content.Context;
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+import android.graphics.Rect;
+import android.graphics.drawable.Drawable;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.SystemClock;
+import android.support.annotation.NonNull;
+
+import org.robolectric.annotation.GraphicsMode;
+import org.robolectric.config.ConfigurationRegistry;
+import org.robolectric.shadows.ShadowLooper;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static org.robolectric.Shadows.shadowOf;
+
+/**
+ * Replays a trace recorded by {@link BackgroundTraceRecorder} into a new
+ * {@link MaterialEditTextBackgroundDrawable}, drawing it once per frame and reporting the draw
+ * time, invalidations and allocations of each frame.
+ * <p>
+ * The replay runs on the main looper of a Robolectric test in paused looper mode, which is used as
+ * a manual clock: the clock is advanced to the time of each event and to each frame, running the
+ * animators of the drawable exactly as far. A replay therefore takes no real time, and the
+ * invalidations of each frame are the same every time a trace is replayed. The snapshot at the
+ * start of a trace is applied before the first frame, without animating.
+ * </p>
+ * <p>
+ * Frames are drawn on a software canvas backed by a bitmap, which requires native graphics
+ * ({@code @GraphicsMode(NATIVE)}); with legacy graphics, canvas calls do nothing and there would
+ * be nothing to measure. The drawable therefore draws its underlines through bitmap strips, or as
+ * plain rects if lightweight, and not through a hardware canvas or a render node. The draw times
+ * and allocated bytes are measured on the JVM running the test, and are only meaningful relative
+ * to each other.
+ * </p>
+ */
+class BackgroundTraceReplayer {
+
+    private static final long FRAME_INTERVAL = 16;
+    private static final long SETTLE_DURATION = 1000;
+
+    private final List<Event> mEvents = new ArrayList<>();
+
+    /**
+     * Read a trace to replay.
+     *
+     * @param inputStream The input stream to read the trace from, which won't be closed.
+     * @throws IOException If an I/O error occurs or the trace is malformed.
+     */
+    public BackgroundTraceReplayer(@NonNull InputStream inputStream) throws IOException {
+
+        ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+        byte[] buffer = new byte[4096];
+        int length;
+        while ((length = inputStream.read(buffer)) != -1) {
+            outputStream.write(buffer, 0, length);
+        }
+
+        TraceReader reader = new TraceReader(outputStream.toByteArray());
+        if (reader.readInt() != BackgroundTraceRecorder.MAGIC) {
+            throw new IOException("Not a trace");
+        }
+        int version = reader.readByte();
+        if (version != BackgroundTraceRecorder.VERSION) {
+            throw new IOException("Unsupported trace version " + version);
+        }
+        long time = 0;
+        while (reader.hasRemaining()) {
+            Event event = new Event();
+            event.type = (byte) reader.readByte();
+            time += reader.readVarint();
+            event.time = time;
+            switch (event.type) {
+                case BackgroundTraceRecorder.EVENT_STATE:
+                    event.value = reader.readByte();
+                    if (event.value >= StateColorTable.STATE_MASK_COUNT) {
+                        throw new IOException("Malformed state mask " + event.value);
+                    }
+                    break;
+                case BackgroundTraceRecorder.EVENT_ERROR:
+                case BackgroundTraceRecorder.EVENT_VISIBILITY:
+                    event.value = reader.readByte();
+                    break;
+                case BackgroundTraceRecorder.EVENT_HOTSPOT:
+                    event.x = Float.intBitsToFloat(reader.readInt());
+                    event.y = Float.intBitsToFloat(reader.readInt());
+                    break;
+                case BackgroundTraceRecorder.EVENT_BOUNDS:
+                    event.bounds = new Rect(reader.readZigzagVarint(), reader.readZigzagVarint(),
+                            reader.readZigzagVarint(), reader.readZigzagVarint());
+                    break;
+                case BackgroundTraceRecorder.EVENT_JUMP:
+                    break;
+                case BackgroundTraceRecorder.EVENT_SNAPSHOT:
+                    event.value = reader.readByte();
+                    if (event.value >= StateColorTable.STATE_MASK_COUNT) {
+                        throw new IOException("Malformed state mask " + event.value);
+                    }
+                    event.flags = reader.readByte();
+                    event.quality = reader.readByte();
+                    event.bounds = new Rect(reader.readZigzagVarint(), reader.readZigzagVarint(),
+                            reader.readZigzagVarint(), reader.readZigzagVarint());
+                    break;
+                default:
+                    throw new IOException("Unknown event type " + event.type);
+            }
+            mEvents.add(event);
+        }
+    }
+
+    /**
+     * Get the number of events in the trace.
+     *
+     * @return The number of events.
+     */
+    public int getEventCount() {
+        return mEvents.size();
+    }
+
+    /**
+     * Get the type of an event in the trace.
+     *
+     * @param index The index of the event.
+     * @return The type of the event, one of the {@code EVENT_} constants of
+     *         {@link BackgroundTraceRecorder}.
+     */
+    public byte getEventType(int index) {
+        return mEvents.get(index).type;
+    }
+
+    /**
+     * Replay the trace into a new drawable, and keep drawing frames for a while after the last
+     * event so that the animations it started can finish. This must be called on the main thread
+     * in paused looper mode, with native graphics.
+     *
+     * @param context The context to create the drawable with.
+     * @return The result of the replay.
+     */
+    @NonNull
+    public Result replay(@NonNull Context context) {
+        if (Looper.myLooper() != Looper.getMainLooper()) {
+            throw new IllegalStateException("replay() called off the main thread");
+        }
+        if (ConfigurationRegistry.get(GraphicsMode.Mode.class) != GraphicsMode.Mode.NATIVE) {
+            throw new IllegalStateException("replay() called without native graphics, where"
+                    + " drawing does nothing");
+        }
+        return new Replay(context).run();
+    }
+
+    /**
+     * The measurements of each frame drawn during a replay.
+     */
+    public static class Result {
+
+        /**
+         * The draw path measured by a replay.
+         */
+        public static final String DRAW_PATH = "software bitmap canvas, native graphics";
+
+        private final int mFrameCount;
+        private final long[] mDrawTimesNanos;
+        private final int[] mInvalidationCounts;
+        private final long[] mAllocatedBytes;
+
+        Result(int frameCount, long[] drawTimesNanos, int[] invalidationCounts,
+               long[] allocatedBytes) {
+            mFrameCount = frameCount;
+            mDrawTimesNanos = drawTimesNanos;
+            mInvalidationCounts = invalidationCounts;
+            mAllocatedBytes = allocatedBytes;
+        }
+
+        /**
+         * Get the number of frames drawn.
+         *
+         * @return The number of frames.
+         */
+        public int getFrameCount() {
+            return mFrameCount;
+        }
+
+        /**
+         * Get the time taken to draw a frame.
+         *
+         * @param frame The index of the frame.
+         * @return The draw time in nanoseconds.
+         */
+        public long getDrawTimeNanos(int frame) {
+            return mDrawTimesNanos[frame];
+        }
+
+        /**
+         * Get the number of invalidations requested by the drawable since the previous frame.
+         *
+         * @param frame The index of the frame.
+         * @return The number of invalidations.
+         */
+        public int getInvalidationCount(int frame) {
+            return mInvalidationCounts[frame];
+        }
+
+        /**
+         * Get the number of bytes allocated while drawing a frame.
+         *
+         * @param frame The index of the frame.
+         * @return The number of bytes allocated, or {@code -1} if the JVM cannot measure it.
+         */
+        public long getAllocatedBytes(int frame) {
+            return mAllocatedBytes[frame];
+        }
+
+        @Override
+        public String toString() {
+            long totalDrawTimeNanos = 0;
+            long maxDrawTimeNanos = 0;
+            int totalInvalidationCount = 0;
+            long totalAllocatedBytes = 0;
+            for (int i = 0; i < mFrameCount; ++i) {
+                totalDrawTimeNanos += mDrawTimesNanos[i];
+                maxDrawTimeNanos = Math.max(maxDrawTimeNanos, mDrawTimesNanos[i]);
+                totalInvalidationCount += mInvalidationCounts[i];
+                totalAllocatedBytes += Math.max(mAllocatedBytes[i], 0);
+            }
+            long meanDrawTimeNanos = mFrameCount > 0 ? totalDrawTimeNanos / mFrameCount : 0;
+            return "Result{drawPath=" + DRAW_PATH
+                    + ", frames=" + mFrameCount
+                    + ", meanDrawTimeNanos=" + meanDrawTimeNanos
+                    + ", maxDrawTimeNanos=" + maxDrawTimeNanos
+                    + ", invalidations=" + totalInvalidationCount
+                    + ", allocatedBytes=" + totalAllocatedBytes + "}";
+        }
+    }
+
+    private class Replay implements Drawable.Callback {
+
+        private final Context mContext;
+        private final MaterialEditTextBackgroundDrawable mDrawable;
+        private final ShadowLooper mLooper = shadowOf(Looper.getMainLooper());
+        private final Handler mHandler = new Handler(Looper.getMainLooper());
+        private final AllocationCounter mAllocationCounter = new AllocationCounter();
+
+        private long mStartTime;
+        private int mInvalidationCount;
+
+        private Bitmap mBitmap;
+
+        private int mFrameCount;
+        private long[] mDrawTimesNanos = new long[64];
+        private int[] mInvalidationCounts = new int[64];
+        private long[] mAllocatedBytes = new long[64];
+
+        public Replay(Context context) {
+            mContext = context;
+            mDrawable = new MaterialEditTextBackgroundDrawable(context);
+            mDrawable.setCallback(this);
+        }
+
+        public Result run() {
+
+            // Let anything already posted run before the replay starts.
+            mLooper.idle();
+            mStartTime = SystemClock.uptimeMillis();
+
+            long lastEventTime = mEvents.isEmpty() ? 0 : mEvents.get(mEvents.size() - 1).time;
+            long endTime = lastEventTime + SETTLE_DURATION;
+            int eventIndex = 0;
+            for (long frameTime = 0; frameTime <= endTime; frameTime += FRAME_INTERVAL) {
+                // The snapshot is at time 0, so it is applied before the first frame.
+                while (eventIndex < mEvents.size() && mEvents.get(eventIndex).time <= frameTime) {
+                    Event event = mEvents.get(eventIndex);
+                    advanceClockTo(event.time);
+                    applyEvent(event);
+                    ++eventIndex;
+                }
+                advanceClockTo(frameTime);
+                drawFrame();
+            }
+
+            return finish();
+        }
+
+        private void advanceClockTo(long time) {
+            long duration = mStartTime + time - SystemClock.uptimeMillis();
+            if (duration > 0) {
+                mLooper.idleFor(duration, TimeUnit.MILLISECONDS);
+            } else {
+                mLooper.idle();
+            }
+        }
+
+        private void applyEvent(Event event) {
+            switch (event.type) {
+                case BackgroundTraceRecorder.EVENT_STATE:
+                    mDrawable.setState(StateColorTable.getStateSet(event.value));
+                    break;
+                case BackgroundTraceRecorder.EVENT_ERROR:
+                    mDrawable.setError((event.value & 1) != 0, (event.value & 1 << 1) != 0);
+                    break;
+                case BackgroundTraceRecorder.EVENT_HOTSPOT:
+                    mDrawable.setHotspot(event.x, event.y);
+                    break;
+                case BackgroundTraceRecorder.EVENT_BOUNDS:
+                    mDrawable.setBounds(event.bounds);
+                    break;
+                case BackgroundTraceRecorder.EVENT_VISIBILITY:
+                    mDrawable.setVisible(event.value != 0, false);
+                    break;
+                case BackgroundTraceRecorder.EVENT_JUMP:
+                    mDrawable.jumpToCurrentState();
+                    break;
+                case BackgroundTraceRecorder.EVENT_SNAPSHOT:
+                    applySnapshot(event);
+                    break;
+            }
+        }
+
+        private void applySnapshot(Event event) {
+            // The recorded drawable was already in this state, so snap to it while invisible
+            // instead of animating into it.
+            mDrawable.setVisible(false, false);
+            mDrawable.setQuality(mContext, event.quality);
+            mDrawable.setLightweight((event.flags
+                    & BackgroundTraceRecorder.SNAPSHOT_FLAG_LIGHTWEIGHT) != 0);
+            mDrawable.setPixelSnappingEnabled((event.flags
+                    & BackgroundTraceRecorder.SNAPSHOT_FLAG_PIXEL_SNAPPING) != 0);
+            mDrawable.setBounds(event.bounds);
+            mDrawable.setState(StateColorTable.getStateSet(event.value));
+            mDrawable.setError((event.flags & BackgroundTraceRecorder.SNAPSHOT_FLAG_ERROR) != 0,
+                    false);
+            mDrawable.setVisible((event.flags & BackgroundTraceRecorder.SNAPSHOT_FLAG_VISIBLE)
+                    != 0, false);
+        }
+
+        private void drawFrame() {
+
+            Rect bounds = mDrawable.getBounds();
+            if (bounds.isEmpty()) {
+                return;
+            }
+            // Our drawable draws in the coordinates of the canvas.
+            int width = bounds.right;
+            int height = bounds.bottom;
+
+            if (mBitmap == null || mBitmap.getWidth() != width || mBitmap.getHeight() != height) {
+                if (mBitmap != null) {
+                    mBitmap.recycle();
+                }
+                mBitmap = Bitmap.createBitmap(width, height, Bitmap.Config.ARGB_8888);
+            }
+            mBitmap.eraseColor(0);
+            Canvas canvas = new Canvas(mBitmap);
+
+            long startAllocatedBytes = mAllocationCounter.getAllocatedBytes();
+            long startTimeNanos = System.nanoTime();
+            mDrawable.draw(canvas);
+            long drawTimeNanos = System.nanoTime() - startTimeNanos;
+            long allocatedBytes = startAllocatedBytes != -1 ?
+                    mAllocationCounter.getAllocatedBytes() - startAllocatedBytes : -1;
+
+            if (mFrameCount == mDrawTimesNanos.length) {
+                int capacity = 2 * mFrameCount;
+                mDrawTimesNanos = Arrays.copyOf(mDrawTimesNanos, capacity);
+                mInvalidationCounts = Arrays.copyOf(mInvalidationCounts, capacity);
+                mAllocatedBytes = Arrays.copyOf(mAllocatedBytes, capacity);
+            }
+            mDrawTimesNanos[mFrameCount] = drawTimeNanos;
+            mInvalidationCounts[mFrameCount] = mInvalidationCount;
+            mAllocatedBytes[mFrameCount] = allocatedBytes;
+            ++mFrameCount;
+            mInvalidationCount = 0;
+        }
+
+        private Result finish() {
+
+            // Ends any running animation.
+            mDrawable.setVisible(false, false);
+            mDrawable.setCallback(null);
+            if (mBitmap != null) {
+                mBitmap.recycle();
+                mBitmap = null;
+            }
+
+            return new Result(mFrameCount, mDrawTimesNanos, mInvalidationCounts, mAllocatedBytes);
+        }
+
+        @Override
+        public void invalidateDrawable(@NonNull Drawable who) {
+            ++mInvalidationCount;
+        }
+
+        @Override
+        public void scheduleDrawable(@NonNull Drawable who, @NonNull Runnable what, long when) {
+            mHandler.postAtTime(what, who, when);
+        }
+
+        @Override
+        public void unscheduleDrawable(@NonNull Drawable who, @NonNull Runnable what) {
+            mHandler.removeCallbacks(what, who);
+        }
+    }
+
+    /*
+     * Counts the bytes allocated by the current thread, if the JVM supports it.
+     */
+    private static class AllocationCounter {
+
+        private final java.lang.management.ThreadMXBean mThreadMXBean =
+                ManagementFactory.getThreadMXBean();
+
+        public long getAllocatedBytes() {
+            if (!(mThreadMXBean instanceof com.sun.management.ThreadMXBean)) {
+                return -1;
+            }
+            return ((com.sun.management.ThreadMXBean) mThreadMXBean).getThreadAllocatedBytes(
+                    Thread.currentThread().getId());
+        }
+    }
+
+    private static class Event {
+        public byte type;
+        public long time;
+        public int value;
+        public int flags;
+        public int quality;
+        public float x;
+        public float y;
+        public Rect bounds;
+    }
+
+    private static class TraceReader {
+
+        private final byte[] mBuffer;
+        private int mPosition;
+
+        public TraceReader(byte[] buffer) {
+            mBuffer = buffer;
+        }
+
+        public boolean hasRemaining() {
+            return mPosition < mBuffer.length;
+        }
+
+        public int readByte() throws IOException {
+            if (!hasRemaining()) {
+                throw new IOException("Truncated trace");
+            }
+            return mBuffer[mPosition++] & 0xFF;
+        }
+
+        public int readInt() throws IOException {
+            return (readByte() << 24) | (readByte() << 16) | (readByte() << 8) | readByte();
+        }
+
+        public int readVarint() throws IOException {
+            int value = 0;
+            for (int shift = 0; shift < 32; shift += 7) {
+                int b = readByte();
+                value |= (b & 0x7F) << shift;
+                if ((b & 0x80) == 0) {
+                    return value;
+                }
+            }
+            throw new IOException("Malformed varint");
+        }
+
+        public int readZigzagVarint() throws IOException {
+            int value = readVarint();
+            return (value >>> 1) ^ -(value & 1);
+        }
+    }
+}
@@ -0,0 +1,163 @@
+/*
+ * Copyright (c) 2016 Zhang Hai <Dreaming.in.Code.ZH@Gmail.com>
+ * All Rights Reserved.
+ */
+
+package me.zhanghai.android.materialedittext;
+
+import android.app.Activity;
+import android.os.Looper;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+import org.robolectric.annotation.GraphicsMode;
+import org.robolectric.annotation.LooperMode;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.robolectric.Shadows.shadowOf;
+
+@RunWith(RobolectricTestRunner.class)
+@Config(sdk = 28)
+@LooperMode(LooperMode.Mode.PAUSED)
+@GraphicsMode(GraphicsMode.Mode.NATIVE)
+public class BackgroundTraceReplayerTest {
+
+    @Test
+    public void record_skipsCallsFromDrawableItself() throws IOException {
+        Activity activity = TestUtils.buildActivity().setup().get();
+        BackgroundTraceReplayer replayer = new BackgroundTraceReplayer(new ByteArrayInputStream(
+                recordSession(activity)));
+
+        assertArrayEquals(new byte[] {
+                BackgroundTraceRecorder.EVENT_SNAPSHOT,
+                BackgroundTraceRecorder.EVENT_BOUNDS,
+                BackgroundTraceRecorder.EVENT_STATE,
+                BackgroundTraceRecorder.EVENT_HOTSPOT,
+                BackgroundTraceRecorder.EVENT_STATE,
+                BackgroundTraceRecorder.EVENT_STATE,
+                BackgroundTraceRecorder.EVENT_JUMP,
+                BackgroundTraceRecorder.EVENT_ERROR,
+                BackgroundTraceRecorder.EVENT_STATE
+        }, getEventTypes(replayer));
+    }
+
+    @Test
+    public void replay_isRepeatable() throws IOException {
+        Activity activity = TestUtils.buildActivity().setup().get();
+        BackgroundTraceReplayer replayer = new BackgroundTraceReplayer(new ByteArrayInputStream(
+                recordSession(activity)));
+
+        BackgroundTraceReplayer.Result result = replayer.replay(activity);
+        BackgroundTraceReplayer.Result otherResult = replayer.replay(activity);
+
+        assertEquals(result.getFrameCount(), otherResult.getFrameCount());
+        int invalidationCount = 0;
+        for (int i = 0; i < result.getFrameCount(); ++i) {
+            assertEquals("Invalidations of frame " + i, result.getInvalidationCount(i),
+                    otherResult.getInvalidationCount(i));
+            invalidationCount += result.getInvalidationCount(i);
+            // Draw times vary from replay to replay, but every frame is actually drawn.
+            assertTrue("Draw time of frame " + i, result.getDrawTimeNanos(i) > 0);
+            assertTrue("Draw time of frame " + i, otherResult.getDrawTimeNanos(i) > 0);
+            assertTrue("Allocations of frame " + i, result.getAllocatedBytes(i) >= -1);
+            assertEquals("Allocations measured for frame " + i,
+                    result.getAllocatedBytes(i) != -1, otherResult.getAllocatedBytes(i) != -1);
+        }
+        assertTrue(invalidationCount > 0);
+        int lastFrame = result.getFrameCount() - 1;
+        // The animations have finished by the end of the replay.
+        assertEquals(0, result.getInvalidationCount(lastFrame));
+        // Classes and drawing caches are set up by then, and the second replay can't need more.
+        assertTrue(otherResult.getAllocatedBytes(lastFrame)
+                <= result.getAllocatedBytes(lastFrame));
+        assertTrue(result.toString().contains(BackgroundTraceReplayer.Result.DRAW_PATH));
+    }
+
+    @Test
+    public void replay_startsFromSnapshot() throws IOException {
+        Activity activity = TestUtils.buildActivity().setup().get();
+        MaterialEditTextBackgroundDrawable drawable = new MaterialEditTextBackgroundDrawable(
+                activity);
+        drawable.setBounds(0, 0, 500, 100);
+        drawable.setState(new int[] { android.R.attr.state_enabled,
+                android.R.attr.state_focused });
+        idleMainLooper(1000);
+
+        BackgroundTraceRecorder recorder = new BackgroundTraceRecorder();
+        recorder.attach(drawable);
+        idleMainLooper(100);
+        drawable.setState(new int[] { android.R.attr.state_enabled });
+        idleMainLooper(1000);
+        recorder.detach();
+        BackgroundTraceReplayer replayer = new BackgroundTraceReplayer(new ByteArrayInputStream(
+                recorder.toByteArray()));
+
+        assertArrayEquals(new byte[] {
+                BackgroundTraceRecorder.EVENT_SNAPSHOT,
+                BackgroundTraceRecorder.EVENT_STATE
+        }, getEventTypes(replayer));
+        BackgroundTraceReplayer.Result result = replayer.replay(activity);
+        // Without the recorded bounds nothing would be drawn, and without the recorded focus
+        // there would be no filled ripple to exit.
+        int animatedFrameCount = 0;
+        for (int i = 0; i < result.getFrameCount(); ++i) {
+            if (result.getInvalidationCount(i) > 0) {
+                ++animatedFrameCount;
+            }
+        }
+        assertTrue(animatedFrameCount >= 5);
+    }
+
+    /*
+     * Record a session with a few ripples, a jump to the current state, and a configuration change
+     * that shouldn't be recorded.
+     */
+    private static byte[] recordSession(Activity activity) {
+
+        MaterialEditTextBackgroundDrawable drawable = new MaterialEditTextBackgroundDrawable(
+                activity);
+        BackgroundTraceRecorder recorder = new BackgroundTraceRecorder();
+        recorder.attach(drawable);
+
+        drawable.setBounds(0, 0, 500, 100);
+        drawable.setState(new int[] { android.R.attr.state_enabled });
+        idleMainLooper(100);
+        drawable.setHotspot(100, 50);
+        drawable.setState(new int[] { android.R.attr.state_enabled,
+                android.R.attr.state_pressed });
+        idleMainLooper(50);
+        drawable.setState(new int[] { android.R.attr.state_enabled,
+                android.R.attr.state_focused });
+        idleMainLooper(100);
+        drawable.jumpToCurrentState();
+        drawable.onConfigurationChanged(activity);
+        idleMainLooper(100);
+        drawable.setError(true, true);
+        idleMainLooper(100);
+        drawable.setState(new int[] { android.R.attr.state_enabled });
+        idleMainLooper(1000);
+
+        recorder.detach();
+        return recorder.toByteArray();
+    }
+
+    private static byte[] getEventTypes(BackgroundTraceReplayer replayer) {
+        byte[] types = new byte[replayer.getEventCount()];
+        for (int i = 0; i < types.length; ++i) {
+            types[i] = replayer.getEventType(i);
+        }
+        return types;
+    }
+
+    private static void idleMainLooper(long duration) {
+        shadowOf(Looper.getMainLooper()).idleFor(duration, TimeUnit.MILLISECONDS);
+    }
+}
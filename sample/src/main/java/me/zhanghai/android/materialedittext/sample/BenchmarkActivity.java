@@ -0,0 +1,361 @@
+/*
+ * Copyright (c) 2016 Zhang Hai <Dreaming.in.Code.ZH@Gmail.com>
+ * All Rights Reserved.
+ */
+
+package me.zhanghai.android.materialedittext.sample;
+
+import android.os.Bundle;
+import android.support.v4.view.ViewCompat;
+import android.support.v7.app.AppCompatActivity;
+import android.support.v7.widget.LinearLayoutManager;
+import android.support.v7.widget.RecyclerView;
+import android.util.Log;
+import android.view.MenuItem;
+import android.view.View;
+import android.view.inputmethod.EditorInfo;
+import android.widget.EditText;
+import android.widget.TextView;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+
+import butterknife.BindView;
+import butterknife.ButterKnife;
+
+/**
+ * Runs scripted scenarios on a long form of {@code MaterialTextInputLayout} and
+ * {@code MaterialEditText} rows, and on an identical form with the framework {@code EditText}
+ * background as the control, reporting the main thread time, {@code EditText} draws and
+ * allocations of each scenario.
+ * <p>
+ * All scenarios are first run once as a warm-up, so that class loading, JIT compilation and view
+ * inflation caches don't count against whichever variant runs first. They are then repeated for a
+ * number of rounds, alternating which variant runs first in each round, and the median of the
+ * rounds is reported.
+ * </p>
+ */
+public class BenchmarkActivity extends AppCompatActivity {
+
+    private static final String TAG = BenchmarkActivity.class.getSimpleName();
+
+    private static final int ITEM_COUNT = 500;
+
+    private static final int WARM_UP_ROUND_COUNT = 1;
+    private static final int ROUND_COUNT = 5;
+
+    private static final String VARIANT_MATERIAL = "material";
+    private static final String VARIANT_FRAMEWORK = "framework";
+
+    private static final int SCROLL_FRAME_COUNT = 240;
+    private static final int SCROLL_STEP_DP = 24;
+    private static final int REBIND_FRAME_COUNT = 60;
+    private static final int FOCUS_FRAME_COUNT = 120;
+    private static final int ERROR_FRAME_COUNT = 60;
+
+    private static int sEditTextDrawCount;
+
+    private static BenchmarkMeter sMeter = new BenchmarkMeter.DebugMeter();
+
+    @BindView(R.id.result)
+    TextView mResultText;
+    @BindView(R.id.recycler)
+    RecyclerView mRecycler;
+
+    private final List<Scenario> mScenarios = new ArrayList<>();
+    private int mScenarioIndex;
+
+    private BenchmarkAdapter mAdapter;
+
+    private int mFrame;
+
+    private final List<Result> mResults = new ArrayList<>();
+    private boolean mFinished;
+
+    private final Runnable mFrameRunnable = new Runnable() {
+        @Override
+        public void run() {
+            doFrame();
+        }
+    };
+
+    static void onEditTextDraw() {
+        ++sEditTextDrawCount;
+    }
+
+    /*
+     * Set the meter for the scenarios, e.g. one that works on the JVM for a headless run.
+     */
+    static void setMeter(BenchmarkMeter meter) {
+        sMeter = meter;
+    }
+
+    @Override
+    protected void onCreate(Bundle savedInstanceState) {
+        super.onCreate(savedInstanceState);
+
+        setContentView(R.layout.benchmark_activity);
+        ButterKnife.bind(this);
+
+        getSupportActionBar().setDisplayHomeAsUpEnabled(true);
+
+        mRecycler.setLayoutManager(new LinearLayoutManager(this));
+
+        for (int round = 0; round < WARM_UP_ROUND_COUNT + ROUND_COUNT; ++round) {
+            boolean warmUp = round < WARM_UP_ROUND_COUNT;
+            // Alternate the order, so that neither variant always runs on a cooler or warmer
+            // process.
+            if (round % 2 == 0) {
+                addScenarios(round, warmUp, VARIANT_MATERIAL, R.layout.benchmark_material_item);
+                addScenarios(round, warmUp, VARIANT_FRAMEWORK, R.layout.benchmark_framework_item);
+            } else {
+                addScenarios(round, warmUp, VARIANT_FRAMEWORK, R.layout.benchmark_framework_item);
+                addScenarios(round, warmUp, VARIANT_MATERIAL, R.layout.benchmark_material_item);
+            }
+        }
+        startScenario();
+    }
+
+    @Override
+    protected void onDestroy() {
+        super.onDestroy();
+
+        mRecycler.removeCallbacks(mFrameRunnable);
+    }
+
+    @Override
+    public boolean onOptionsItemSelected(MenuItem item) {
+        switch (item.getItemId()) {
+            case android.R.id.home:
+                AppUtils.navigateUp(this);
+                return true;
+            default:
+                return super.onOptionsItemSelected(item);
+        }
+    }
+
+    /*
+     * Get the median result of each scenario over the measured rounds, or an empty list if the
+     * benchmark hasn't finished yet.
+     */
+    List<Result> getResults() {
+        return mResults;
+    }
+
+    boolean isFinished() {
+        return mFinished;
+    }
+
+    private void addScenarios(int round, boolean warmUp, String variant, final int itemLayoutRes) {
+
+        mScenarios.add(new Scenario(round, warmUp, variant, "scroll", SCROLL_FRAME_COUNT) {
+            @Override
+            public void onStart() {
+                mAdapter = new BenchmarkAdapter(itemLayoutRes, ITEM_COUNT);
+                mRecycler.setAdapter(mAdapter);
+            }
+            @Override
+            public void doFrame(int frame) {
+                int step = (int) (SCROLL_STEP_DP * getResources().getDisplayMetrics().density);
+                mRecycler.scrollBy(0, frame < SCROLL_FRAME_COUNT / 2 ? step : -step);
+            }
+        });
+
+        mScenarios.add(new Scenario(round, warmUp, variant, "rebind", REBIND_FRAME_COUNT) {
+            @Override
+            public void doFrame(int frame) {
+                mAdapter.notifyDataSetChanged();
+            }
+        });
+
+        mScenarios.add(new Scenario(round, warmUp, variant, "focus", FOCUS_FRAME_COUNT) {
+            @Override
+            public void onStart() {
+                mRecycler.scrollToPosition(0);
+            }
+            @Override
+            public void doFrame(int frame) {
+                View focusedView = mRecycler.findFocus();
+                if (focusedView instanceof EditText) {
+                    ((EditText) focusedView).onEditorAction(EditorInfo.IME_ACTION_NEXT);
+                } else {
+                    View firstChild = mRecycler.getChildAt(0);
+                    if (firstChild != null) {
+                        firstChild.findViewById(R.id.edit).requestFocus();
+                    }
+                }
+            }
+            @Override
+            public void onFinish() {
+                View focusedView = mRecycler.findFocus();
+                if (focusedView != null) {
+                    focusedView.clearFocus();
+                }
+            }
+        });
+
+        mScenarios.add(new Scenario(round, warmUp, variant, "error", ERROR_FRAME_COUNT) {
+            @Override
+            public void doFrame(int frame) {
+                boolean error = frame % 2 == 0;
+                for (int i = 0, count = mRecycler.getChildCount(); i < count; ++i) {
+                    BenchmarkAdapter.ViewHolder holder = (BenchmarkAdapter.ViewHolder)
+                            mRecycler.getChildViewHolder(mRecycler.getChildAt(i));
+                    int position = holder.getAdapterPosition();
+                    if (position != RecyclerView.NO_POSITION) {
+                        mAdapter.setError(position, error);
+                        holder.bindError(error);
+                    }
+                }
+            }
+        });
+    }
+
+    private void startScenario() {
+
+        Scenario scenario = mScenarios.get(mScenarioIndex);
+        mResultText.setText(String.format(Locale.ROOT, "%s %d/%d: %s %s",
+                scenario.warmUp ? "Warm-up" : "Round", scenario.warmUp ? scenario.round + 1
+                        : scenario.round - WARM_UP_ROUND_COUNT + 1,
+                scenario.warmUp ? WARM_UP_ROUND_COUNT : ROUND_COUNT, scenario.variant,
+                scenario.name));
+        scenario.onStart();
+
+        mFrame = 0;
+        sEditTextDrawCount = 0;
+        sMeter.start();
+        ViewCompat.postOnAnimation(mRecycler, mFrameRunnable);
+    }
+
+    private void doFrame() {
+
+        Scenario scenario = mScenarios.get(mScenarioIndex);
+        if (mFrame < scenario.frameCount) {
+            scenario.doFrame(mFrame);
+            ++mFrame;
+            ViewCompat.postOnAnimation(mRecycler, mFrameRunnable);
+            return;
+        }
+
+        // The last frame has been drawn before we get here.
+        finishScenario(scenario);
+        ++mScenarioIndex;
+        if (mScenarioIndex < mScenarios.size()) {
+            startScenario();
+        } else {
+            reportResults();
+        }
+    }
+
+    private void finishScenario(Scenario scenario) {
+
+        long threadTime = sMeter.getThreadTimeMillis();
+        long allocations = sMeter.getAllocations();
+        sMeter.stop();
+        int drawCount = sEditTextDrawCount;
+        scenario.onFinish();
+
+        Log.d(TAG, String.format(Locale.ROOT, "%s %d: %s %s %d ms %d draws %d %s",
+                scenario.warmUp ? "Warm-up" : "Round", scenario.round, scenario.variant,
+                scenario.name, threadTime, drawCount, allocations, sMeter.getAllocationUnit()));
+        scenario.threadTimeMillis = threadTime;
+        scenario.drawCount = drawCount;
+        scenario.allocations = allocations;
+    }
+
+    private void reportResults() {
+
+        // Scenarios of the first measured round, in the order of the material variant first.
+        List<Scenario> firstRoundScenarios = new ArrayList<>();
+        for (String variant : Arrays.asList(VARIANT_MATERIAL, VARIANT_FRAMEWORK)) {
+            for (Scenario scenario : mScenarios) {
+                if (scenario.round == WARM_UP_ROUND_COUNT && scenario.variant.equals(variant)) {
+                    firstRoundScenarios.add(scenario);
+                }
+            }
+        }
+
+        StringBuilder builder = new StringBuilder();
+        for (Scenario firstRoundScenario : firstRoundScenarios) {
+            List<Long> threadTimes = new ArrayList<>();
+            List<Long> drawCounts = new ArrayList<>();
+            List<Long> allocations = new ArrayList<>();
+            for (Scenario scenario : mScenarios) {
+                if (!scenario.warmUp && scenario.variant.equals(firstRoundScenario.variant)
+                        && scenario.name.equals(firstRoundScenario.name)) {
+                    threadTimes.add(scenario.threadTimeMillis);
+                    drawCounts.add(scenario.drawCount);
+                    allocations.add(scenario.allocations);
+                }
+            }
+            Result result = new Result(firstRoundScenario.variant, firstRoundScenario.name,
+                    median(threadTimes), median(drawCounts), median(allocations));
+            mResults.add(result);
+            String line = String.format(Locale.ROOT, "%-9s %-6s %5d ms %6d draws %8d %s",
+                    result.variant, result.name, result.threadTimeMillis, result.drawCount,
+                    result.allocations, sMeter.getAllocationUnit());
+            builder.append(line).append('\n');
+            Log.i(TAG, line);
+        }
+        builder.append(String.format(Locale.ROOT, "Done, median of %d rounds", ROUND_COUNT));
+        mResultText.setText(builder);
+        Log.i(TAG, "Done");
+        mFinished = true;
+    }
+
+    private static long median(List<Long> values) {
+        Collections.sort(values);
+        return values.get(values.size() / 2);
+    }
+
+    /*
+     * The median measurements of a scenario over the measured rounds.
+     */
+    static class Result {
+
+        public final String variant;
+        public final String name;
+        public final long threadTimeMillis;
+        public final long drawCount;
+        public final long allocations;
+
+        public Result(String variant, String name, long threadTimeMillis, long drawCount,
+                      long allocations) {
+            this.variant = variant;
+            this.name = name;
+            this.threadTimeMillis = threadTimeMillis;
+            this.drawCount = drawCount;
+            this.allocations = allocations;
+        }
+    }
+
+    private static abstract class Scenario {
+
+        public final int round;
+        public final boolean warmUp;
+        public final String variant;
+        public final String name;
+        public final int frameCount;
+
+        public long threadTimeMillis;
+        public long drawCount;
+        public long allocations;
+
+        public Scenario(int round, boolean warmUp, String variant, String name, int frameCount) {
+            this.round = round;
+            this.warmUp = warmUp;
+            this.variant = variant;
+            this.name = name;
+            this.frameCount = frameCount;
+        }
+
+        public void onStart() {}
+
+        public abstract void doFrame(int frame);
+
+        public void onFinish() {}
+    }
+}
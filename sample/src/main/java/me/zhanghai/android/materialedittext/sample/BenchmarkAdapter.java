@@ -0,0 +1,64 @@
+/*
+ * Copyright (c) 2016 Zhang Hai <Dreaming.in.Code.ZH@Gmail.com>
+ * All Rights Reserved.
+ */
+
+package me.zhanghai.android.materialedittext.sample;
+
+import android.support.design.widget.TextInputLayout;
+import android.support.v7.widget.RecyclerView;
+import android.view.LayoutInflater;
+import android.view.View;
+import android.view.ViewGroup;
+import android.widget.EditText;
+
+import butterknife.BindView;
+import butterknife.ButterKnife;
+
+public class BenchmarkAdapter extends RecyclerView.Adapter<BenchmarkAdapter.ViewHolder> {
+
+    private final int mItemLayoutRes;
+    private final boolean[] mErrors;
+
+    public BenchmarkAdapter(int itemLayoutRes, int itemCount) {
+        mItemLayoutRes = itemLayoutRes;
+        mErrors = new boolean[itemCount];
+    }
+
+    public void setError(int position, boolean error) {
+        mErrors[position] = error;
+    }
+
+    @Override
+    public int getItemCount() {
+        return mErrors.length;
+    }
+
+    @Override
+    public ViewHolder onCreateViewHolder(ViewGroup parent, int viewType) {
+        return new ViewHolder(LayoutInflater.from(parent.getContext()).inflate(mItemLayoutRes,
+                parent, false));
+    }
+
+    @Override
+    public void onBindViewHolder(ViewHolder holder, int position) {
+        holder.edit.setHint("Field " + position);
+        holder.bindError(mErrors[position]);
+    }
+
+    public static class ViewHolder extends RecyclerView.ViewHolder {
+
+        @BindView(R.id.edit)
+        public EditText edit;
+
+        public ViewHolder(View itemView) {
+            super(itemView);
+
+            ButterKnife.bind(this, itemView);
+        }
+
+        public void bindError(boolean error) {
+            ((TextInputLayout) itemView).setError(error ? "An error occurred" : null);
+        }
+    }
+}
@@ -0,0 +1,66 @@
+/*
+ * Copyright (c) 2016 Zhang Hai <Dreaming.in.Code.ZH@Gmail.com>
+ * All Rights Reserved.
+ */
+
+package me.zhanghai.android.materialedittext.sample;
+
+import android.os.Debug;
+import android.os.SystemClock;
+
+/**
+ * Measures the main thread time and allocations of a benchmark scenario.
+ */
+public interface BenchmarkMeter {
+
+    void start();
+
+    long getThreadTimeMillis();
+
+    long getAllocations();
+
+    /**
+     * @return The unit of {@link #getAllocations()}, e.g. {@code "allocs"} or {@code "bytes"}.
+     */
+    String getAllocationUnit();
+
+    void stop();
+
+    /**
+     * Measures with the thread CPU time and the allocation counting of the Android runtime.
+     */
+    class DebugMeter implements BenchmarkMeter {
+
+        private long mStartThreadTime;
+
+        @Override
+        @SuppressWarnings("deprecation")
+        public void start() {
+            Debug.startAllocCounting();
+            Debug.resetThreadAllocCount();
+            mStartThreadTime = SystemClock.currentThreadTimeMillis();
+        }
+
+        @Override
+        public long getThreadTimeMillis() {
+            return SystemClock.currentThreadTimeMillis() - mStartThreadTime;
+        }
+
+        @Override
+        @SuppressWarnings("deprecation")
+        public long getAllocations() {
+            return Debug.getThreadAllocCount();
+        }
+
+        @Override
+        public String getAllocationUnit() {
+            return "allocs";
+        }
+
+        @Override
+        @SuppressWarnings("deprecation")
+        public void stop() {
+            Debug.stopAllocCounting();
+        }
+    }
+}
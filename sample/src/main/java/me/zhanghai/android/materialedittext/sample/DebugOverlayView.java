@@ -0,0 +1,306 @@
+/*
+ * Copyright (c) 2016 Zhang Hai <Dreaming.in.Code.ZH@Gmail.com>
+ * All Rights Reserved.
+ */
+
+package me.zhanghai.android.materialedittext.sample;
+
+import android.app.Activity;
+import android.content.Context;
+import android.graphics.Canvas;
+import android.graphics.Color;
+import android.graphics.Paint;
+import android.graphics.drawable.Drawable;
+import android.os.SystemClock;
+import android.support.annotation.NonNull;
+import android.view.View;
+import android.view.ViewGroup;
+import android.widget.FrameLayout;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+import me.zhanghai.android.materialedittext.MaterialEditText;
+import me.zhanghai.android.materialedittext.MaterialEditTextBackgroundDrawable;
+
+/**
+ * An overlay showing, for each {@link MaterialEditText} in an activity, the invalidations of its
+ * background in the last second, its live ripples and the time its last draw took. Fields whose
+ * background is animating are highlighted in yellow, so that an animation still running while the
+ * field looks idle stands out, and fields whose background keeps invalidating without animating,
+ * e.g. in an invalidation loop, are highlighted in red.
+ * <p>
+ * Fields are looked up again on every update, so that fields added or removed after the overlay
+ * is shown are picked up. Invalidations are counted by wrapping the {@link Drawable.Callback} of
+ * each background. The draw time is the time the last real draw of the field took, background
+ * included, and is only available for a {@link DrawCountingMaterialEditText}; the overlay never
+ * draws a field itself. The ripple count and whether the background is animating come from the
+ * public {@link MaterialEditTextBackgroundDrawable#getRippleCount()} and
+ * {@link MaterialEditTextBackgroundDrawable#isAnimating()}, which apps can use the same way.
+ * </p>
+ */
+public class DebugOverlayView extends View {
+
+    private static final long UPDATE_INTERVAL = 1000;
+
+    // State and bounds changes without animation invalidate a few times, while an invalidation
+    // loop invalidates on every frame.
+    private static final int IDLE_INVALIDATION_WARNING_THRESHOLD = 10;
+
+    private static final int TEXT_SIZE_SP = 10;
+    private static final int TEXT_PADDING_DP = 2;
+
+    private static final int TEXT_COLOR = Color.WHITE;
+    private static final int TEXT_BACKGROUND_COLOR = 0xA0000000;
+    private static final int ANIMATING_COLOR = 0x40FFFF00;
+    private static final int WARNING_COLOR = 0x40FF0000;
+
+    // Drawables only keep a weak reference to their callback, so we must keep our monitors.
+    private final List<FieldMonitor> mMonitors = new ArrayList<>();
+    private final List<MaterialEditText> mFields = new ArrayList<>();
+
+    private final Paint mTextPaint = new Paint(Paint.ANTI_ALIAS_FLAG);
+    private final Paint mRectPaint = new Paint();
+    private final int mTextPadding;
+
+    private final int[] mLocation = new int[2];
+    private final int[] mFieldLocation = new int[2];
+
+    private final Runnable mUpdateRunnable = new Runnable() {
+        @Override
+        public void run() {
+            update();
+            postDelayed(this, UPDATE_INTERVAL);
+        }
+    };
+
+    public DebugOverlayView(Context context) {
+        super(context);
+
+        float density = getResources().getDisplayMetrics().density;
+        float scaledDensity = getResources().getDisplayMetrics().scaledDensity;
+        mTextPaint.setColor(TEXT_COLOR);
+        mTextPaint.setTextSize(TEXT_SIZE_SP * scaledDensity);
+        mTextPadding = (int) (TEXT_PADDING_DP * density);
+    }
+
+    /**
+     * Show a debug overlay over the content of an activity.
+     *
+     * @param activity The activity.
+     * @return The debug overlay, which can be removed with {@link #detach()}.
+     */
+    public static DebugOverlayView attach(Activity activity) {
+        ViewGroup contentView = (ViewGroup) activity.findViewById(android.R.id.content);
+        DebugOverlayView overlayView = new DebugOverlayView(activity);
+        contentView.addView(overlayView, new FrameLayout.LayoutParams(
+                ViewGroup.LayoutParams.MATCH_PARENT, ViewGroup.LayoutParams.MATCH_PARENT));
+        return overlayView;
+    }
+
+    /**
+     * Remove this debug overlay and restore the callbacks of the backgrounds.
+     */
+    public void detach() {
+        for (FieldMonitor monitor : mMonitors) {
+            monitor.detach();
+        }
+        mMonitors.clear();
+        ((ViewGroup) getParent()).removeView(this);
+    }
+
+    /*
+     * Monitor the fields currently in our parent, and stop monitoring those removed from it or
+     * whose background has been replaced.
+     */
+    private void updateFields() {
+
+        findFields((View) getParent(), mFields);
+
+        for (int i = mMonitors.size() - 1; i >= 0; --i) {
+            FieldMonitor monitor = mMonitors.get(i);
+            View field = monitor.getField();
+            int fieldIndex = mFields.indexOf(field);
+            if (fieldIndex != -1 && field.getBackground() == monitor.getBackground()) {
+                mFields.remove(fieldIndex);
+            } else {
+                monitor.detach();
+                mMonitors.remove(i);
+            }
+        }
+
+        for (MaterialEditText field : mFields) {
+            Drawable background = field.getBackground();
+            if (background instanceof MaterialEditTextBackgroundDrawable) {
+                mMonitors.add(new FieldMonitor(field,
+                        (MaterialEditTextBackgroundDrawable) background));
+            }
+        }
+        mFields.clear();
+    }
+
+    private static void findFields(View view, List<MaterialEditText> fields) {
+        if (view instanceof MaterialEditText) {
+            fields.add((MaterialEditText) view);
+        } else if (view instanceof ViewGroup) {
+            ViewGroup viewGroup = (ViewGroup) view;
+            for (int i = 0, count = viewGroup.getChildCount(); i < count; ++i) {
+                findFields(viewGroup.getChildAt(i), fields);
+            }
+        }
+    }
+
+    @Override
+    protected void onAttachedToWindow() {
+        super.onAttachedToWindow();
+
+        post(mUpdateRunnable);
+    }
+
+    @Override
+    protected void onDetachedFromWindow() {
+        super.onDetachedFromWindow();
+
+        removeCallbacks(mUpdateRunnable);
+    }
+
+    private void update() {
+        updateFields();
+        for (FieldMonitor monitor : mMonitors) {
+            monitor.update();
+        }
+        invalidate();
+    }
+
+    @Override
+    protected void onDraw(Canvas canvas) {
+
+        getLocationInWindow(mLocation);
+        Paint.FontMetricsInt fontMetrics = mTextPaint.getFontMetricsInt();
+        for (FieldMonitor monitor : mMonitors) {
+
+            View field = monitor.getField();
+            if (!field.isShown()) {
+                continue;
+            }
+            field.getLocationInWindow(mFieldLocation);
+            int left = mFieldLocation[0] - mLocation[0];
+            int top = mFieldLocation[1] - mLocation[1];
+
+            int highlightColor = monitor.isInvalidatingWithoutAnimating() ? WARNING_COLOR
+                    : monitor.isAnimating() ? ANIMATING_COLOR : Color.TRANSPARENT;
+            if (highlightColor != Color.TRANSPARENT) {
+                mRectPaint.setColor(highlightColor);
+                canvas.drawRect(left, top, left + field.getWidth(), top + field.getHeight(),
+                        mRectPaint);
+            }
+
+            String text = monitor.getText();
+            int textWidth = (int) Math.ceil(mTextPaint.measureText(text));
+            int textHeight = fontMetrics.descent - fontMetrics.ascent;
+            int textRight = left + field.getWidth();
+            int textLeft = textRight - textWidth - 2 * mTextPadding;
+            mRectPaint.setColor(TEXT_BACKGROUND_COLOR);
+            canvas.drawRect(textLeft, top, textRight, top + textHeight + 2 * mTextPadding,
+                    mRectPaint);
+            canvas.drawText(text, textLeft + mTextPadding, top + mTextPadding - fontMetrics.ascent,
+                    mTextPaint);
+        }
+    }
+
+    private static class FieldMonitor implements Drawable.Callback {
+
+        private final View mField;
+        private final MaterialEditTextBackgroundDrawable mBackground;
+        private final Drawable.Callback mCallback;
+
+        private int mInvalidationCount;
+        private int mIdleInvalidationCount;
+        private long mLastUpdateTime = SystemClock.uptimeMillis();
+
+        private int mInvalidationsPerSecond;
+        private boolean mInvalidatedWhileIdle;
+        private int mRippleCount;
+        private boolean mAnimating;
+        private long mDrawTimeNanos;
+
+        public FieldMonitor(View field, MaterialEditTextBackgroundDrawable background) {
+            mField = field;
+            mBackground = background;
+            mCallback = background.getCallback();
+            mBackground.setCallback(this);
+        }
+
+        public void detach() {
+            if (mBackground.getCallback() == this) {
+                mBackground.setCallback(mCallback);
+            }
+        }
+
+        public View getField() {
+            return mField;
+        }
+
+        public MaterialEditTextBackgroundDrawable getBackground() {
+            return mBackground;
+        }
+
+        public void update() {
+
+            long time = SystemClock.uptimeMillis();
+            long elapsedTime = Math.max(time - mLastUpdateTime, 1);
+            mInvalidationsPerSecond = (int) (mInvalidationCount * 1000 / elapsedTime);
+            mInvalidationCount = 0;
+            mInvalidatedWhileIdle = mIdleInvalidationCount * 1000 / elapsedTime
+                    >= IDLE_INVALIDATION_WARNING_THRESHOLD;
+            mIdleInvalidationCount = 0;
+            mLastUpdateTime = time;
+
+            mRippleCount = mBackground.getRippleCount();
+            mAnimating = mBackground.isAnimating();
+            mDrawTimeNanos = mField instanceof DrawCountingMaterialEditText ?
+                    ((DrawCountingMaterialEditText) mField).getLastDrawTimeNanos() : -1;
+        }
+
+        public boolean isAnimating() {
+            return mAnimating;
+        }
+
+        public boolean isInvalidatingWithoutAnimating() {
+            return mInvalidatedWhileIdle;
+        }
+
+        public String getText() {
+            return String.format(Locale.ROOT, "%d inv/s  %d ripples  %s us%s",
+                    mInvalidationsPerSecond, mRippleCount,
+                    mDrawTimeNanos != -1 ? String.valueOf(mDrawTimeNanos / 1000) : "-",
+                    mAnimating ? "  animating" : "");
+        }
+
+        @Override
+        public void invalidateDrawable(@NonNull Drawable who) {
+            ++mInvalidationCount;
+            if (!mBackground.isAnimating()) {
+                ++mIdleInvalidationCount;
+            }
+            if (mCallback != null) {
+                mCallback.invalidateDrawable(who);
+            }
+        }
+
+        @Override
+        public void scheduleDrawable(@NonNull Drawable who, @NonNull Runnable what, long when) {
+            if (mCallback != null) {
+                mCallback.scheduleDrawable(who, what, when);
+            }
+        }
+
+        @Override
+        public void unscheduleDrawable(@NonNull Drawable who, @NonNull Runnable what) {
+            if (mCallback != null) {
+                mCallback.unscheduleDrawable(who, what);
+            }
+        }
+    }
+}
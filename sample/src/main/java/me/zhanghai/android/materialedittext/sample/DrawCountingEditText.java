@@ -0,0 +1,33 @@
+/*
+ * Copyright (c) 2016 Zhang Hai <Dreaming.in.Code.ZH@Gmail.com>
+ * All Rights Reserved.
+ */
+
+package me.zhanghai.android.materialedittext.sample;
+
+import android.content.Context;
+import android.graphics.Canvas;
+import android.support.design.widget.TextInputEditText;
+import android.util.AttributeSet;
+
+public class DrawCountingEditText extends TextInputEditText {
+
+    public DrawCountingEditText(Context context) {
+        super(context);
+    }
+
+    public DrawCountingEditText(Context context, AttributeSet attrs) {
+        super(context, attrs);
+    }
+
+    public DrawCountingEditText(Context context, AttributeSet attrs, int defStyleAttr) {
+        super(context, attrs, defStyleAttr);
+    }
+
+    @Override
+    public void draw(Canvas canvas) {
+        BenchmarkActivity.onEditTextDraw();
+
+        super.draw(canvas);
+    }
+}
@@ -0,0 +1,47 @@
+/*
+ * Copyright (c) 2016 Zhang Hai <Dreaming.in.Code.ZH@Gmail.com>
+ * All Rights Reserved.
+ */
+
+package me.zhanghai.android.materialedittext.sample;
+
+import android.content.Context;
+import android.graphics.Canvas;
+import android.util.AttributeSet;
+
+import me.zhanghai.android.materialedittext.MaterialEditText;
+
+public class DrawCountingMaterialEditText extends MaterialEditText {
+
+    private long mLastDrawTimeNanos;
+
+    public DrawCountingMaterialEditText(Context context) {
+        super(context);
+    }
+
+    public DrawCountingMaterialEditText(Context context, AttributeSet attrs) {
+        super(context, attrs);
+    }
+
+    public DrawCountingMaterialEditText(Context context, AttributeSet attrs, int defStyleAttr) {
+        super(context, attrs, defStyleAttr);
+    }
+
+    @Override
+    public void draw(Canvas canvas) {
+        BenchmarkActivity.onEditTextDraw();
+
+        long startTimeNanos = System.nanoTime();
+        super.draw(canvas);
+        mLastDrawTimeNanos = System.nanoTime() - startTimeNanos;
+    }
+
+    /**
+     * Get the time the last draw of this view took on the canvas it was given, background included.
+     *
+     * @return The time in nanoseconds, or 0 if this view hasn't been drawn.
+     */
+    public long getLastDrawTimeNanos() {
+        return mLastDrawTimeNanos;
+    }
+}
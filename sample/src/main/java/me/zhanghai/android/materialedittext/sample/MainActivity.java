@@ -25,6 +25,8 @@ public class MainActivity extends AppCompatActivity {
     @BindView(R.id.error_edit_layout)
     TextInputLayout mErrorEditLayout;
 
+    private DebugOverlayView mDebugOverlayView;
+
     @Override
     protected void onCreate(Bundle savedInstanceState) {
         super.onCreate(savedInstanceState);
@@ -46,6 +48,13 @@ public class MainActivity extends AppCompatActivity {
     @Override
     public boolean onOptionsItemSelected(MenuItem item) {
         switch (item.getItemId()) {
+            case R.id.action_benchmark:
+                startActivity(new Intent(this, BenchmarkActivity.class));
+                return true;
+            case R.id.action_debug_overlay:
+                toggleDebugOverlay();
+                item.setChecked(mDebugOverlayView != null);
+                return true;
             case R.id.action_about:
                 startActivity(new Intent(this, AboutActivity.class));
                 return true;
@@ -53,4 +62,13 @@ public class MainActivity extends AppCompatActivity {
                 return super.onOptionsItemSelected(item);
         }
     }
+
+    private void toggleDebugOverlay() {
+        if (mDebugOverlayView == null) {
+            mDebugOverlayView = DebugOverlayView.attach(this);
+        } else {
+            mDebugOverlayView.detach();
+            mDebugOverlayView = null;
+        }
+    }
 }
@@ -0,0 +1,175 @@
+/*
+ * Copyright (c) 2016 Zhang Hai <Dreaming.in.Code.ZH@Gmail.com>
+ * All Rights Reserved.
+ */
+
+package me.zhanghai.android.materialedittext.sample;
+
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+import android.os.Looper;
+import android.view.View;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.Robolectric;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.android.controller.ActivityController;
+import org.robolectric.annotation.Config;
+import org.robolectric.annotation.GraphicsMode;
+import org.robolectric.annotation.LooperMode;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.robolectric.Shadows.shadowOf;
+
+/**
+ * Runs {@link BenchmarkActivity} headless on the main looper of Robolectric in paused looper mode,
+ * advancing the clock one frame at a time, and writes the median result of each scenario to
+ * {@code build/reports/benchmark/benchmark.csv}.
+ * <p>
+ * Robolectric never draws a window by itself, so the decor view is drawn into a bitmap after each
+ * frame, with native graphics so that drawing actually happens. This is a software draw of the
+ * whole window, so every field on screen is drawn on every frame, unlike with a hardware renderer
+ * that only redraws what was invalidated; the draw counts are still the same for both variants.
+ * </p>
+ * <p>
+ * The thread time and allocated bytes are measured on the JVM running the test, so they are only
+ * meaningful to compare the two variants with each other, and between runs on the same machine.
+ * </p>
+ */
+@RunWith(RobolectricTestRunner.class)
+@Config(sdk = 28)
+@LooperMode(LooperMode.Mode.PAUSED)
+@GraphicsMode(GraphicsMode.Mode.NATIVE)
+public class BenchmarkActivityTest {
+
+    private static final long FRAME_INTERVAL = 16;
+    // Far more frames than all scenarios of all rounds take.
+    private static final int MAX_FRAME_COUNT = 100000;
+
+    private static final File REPORT_FILE = new File("build/reports/benchmark/benchmark.csv");
+
+    @Before
+    public void setUp() {
+        BenchmarkActivity.setMeter(new JvmMeter());
+    }
+
+    @After
+    public void tearDown() {
+        BenchmarkActivity.setMeter(new BenchmarkMeter.DebugMeter());
+    }
+
+    @Test
+    public void runScenarios() throws IOException {
+
+        ActivityController<BenchmarkActivity> controller = Robolectric.buildActivity(
+                BenchmarkActivity.class).setup();
+        BenchmarkActivity activity = controller.get();
+        View decorView = activity.getWindow().getDecorView();
+        Bitmap bitmap = null;
+        Canvas canvas = null;
+        for (int i = 0; i < MAX_FRAME_COUNT && !activity.isFinished(); ++i) {
+            shadowOf(Looper.getMainLooper()).idleFor(FRAME_INTERVAL, TimeUnit.MILLISECONDS);
+            int width = decorView.getWidth();
+            int height = decorView.getHeight();
+            if (width == 0 || height == 0) {
+                continue;
+            }
+            if (bitmap == null || bitmap.getWidth() != width || bitmap.getHeight() != height) {
+                bitmap = Bitmap.createBitmap(width, height, Bitmap.Config.ARGB_8888);
+                canvas = new Canvas(bitmap);
+            }
+            decorView.draw(canvas);
+        }
+        assertTrue("Benchmark didn't finish", activity.isFinished());
+
+        List<BenchmarkActivity.Result> results = activity.getResults();
+        // Scroll, rebind, focus and error, for each of the two variants.
+        assertEquals(8, results.size());
+        for (BenchmarkActivity.Result result : results) {
+            if (result.name.equals("scroll")) {
+                assertTrue("No draws for " + result.variant + " scroll", result.drawCount > 0);
+            }
+        }
+        writeReport(results);
+
+        controller.pause().stop().destroy();
+    }
+
+    private static void writeReport(List<BenchmarkActivity.Result> results) throws IOException {
+        File directory = REPORT_FILE.getParentFile();
+        if (!directory.isDirectory() && !directory.mkdirs()) {
+            throw new IOException("Cannot create " + directory);
+        }
+        try (Writer writer = new OutputStreamWriter(new FileOutputStream(REPORT_FILE),
+                StandardCharsets.UTF_8)) {
+            writer.write("variant,scenario,threadTimeMillis,draws,allocatedBytes\n");
+            for (BenchmarkActivity.Result result : results) {
+                writer.write(String.format(Locale.ROOT, "%s,%s,%d,%d,%d\n", result.variant,
+                        result.name, result.threadTimeMillis, result.drawCount,
+                        result.allocations));
+            }
+        }
+    }
+
+    /*
+     * Measures with the thread CPU time and allocated bytes of the JVM, because the allocation
+     * counting of the Android runtime isn't available here.
+     */
+    private static class JvmMeter implements BenchmarkMeter {
+
+        private final ThreadMXBean mThreadMXBean = ManagementFactory.getThreadMXBean();
+
+        private long mStartThreadTimeNanos;
+        private long mStartAllocatedBytes;
+
+        @Override
+        public void start() {
+            mStartThreadTimeNanos = mThreadMXBean.getCurrentThreadCpuTime();
+            mStartAllocatedBytes = getAllocatedBytes();
+        }
+
+        @Override
+        public long getThreadTimeMillis() {
+            return TimeUnit.NANOSECONDS.toMillis(mThreadMXBean.getCurrentThreadCpuTime()
+                    - mStartThreadTimeNanos);
+        }
+
+        @Override
+        public long getAllocations() {
+            long allocatedBytes = getAllocatedBytes();
+            return allocatedBytes != -1 ? allocatedBytes - mStartAllocatedBytes : -1;
+        }
+
+        @Override
+        public String getAllocationUnit() {
+            return "bytes";
+        }
+
+        @Override
+        public void stop() {}
+
+        private long getAllocatedBytes() {
+            if (!(mThreadMXBean instanceof com.sun.management.ThreadMXBean)) {
+                return -1;
+            }
+            return ((com.sun.management.ThreadMXBean) mThreadMXBean).getThreadAllocatedBytes(
+                    Thread.currentThread().getId());
+        }
+    }
+}